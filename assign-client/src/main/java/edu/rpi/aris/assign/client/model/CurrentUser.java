@@ -7,6 +7,7 @@ import edu.rpi.aris.assign.client.ResponseHandler;
 import edu.rpi.aris.assign.message.ClassCreateMsg;
 import edu.rpi.aris.assign.message.ClassDeleteMsg;
 import edu.rpi.aris.assign.message.ConnectionInitMsg;
+import edu.rpi.aris.assign.message.ProblemMessage;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
@@ -137,6 +138,7 @@ public class CurrentUser implements ResponseHandler<ConnectionInitMsg> {
 
     @Override
     public void response(ConnectionInitMsg message) {
+        ProblemMessage.setServerFormats(message.getProblemFormats());
         Platform.runLater(() -> {
             ServerConfig.setPermissions(message.getPermissions());
             user = new User(message, LocalConfig.USERNAME.getValue());
@@ -31,8 +31,6 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
@@ -118,6 +116,7 @@ public class AssignServer implements Runnable {
             RuntimeException e1 = new RuntimeException("Failed to load server permissions", e);
             LibAssign.getInstance().showExceptionError(Thread.currentThread(), e1, true);
         }
+        dbManager.startBlobRecompression();
         Timer updateTimer = new Timer();
         Calendar calendar = Calendar.getInstance();
         calendar.set(Calendar.HOUR_OF_DAY, 4);
@@ -142,17 +141,8 @@ public class AssignServer implements Runnable {
 
     private void checkSubmissions() {
         logger.info("Checking for ungraded submissions");
-        try (Connection connection = dbManager.getConnection();
-             PreparedStatement select = connection.prepareStatement("SELECT id FROM submission WHERE short_status=?;")) {
-            select.setString(1, GradingStatus.GRADING.name());
-            try (ResultSet rs = select.executeQuery()) {
-                int rows = 0;
-                while (rs.next()) {
-                    Grader.getInstance().addToGradeQueue(rs.getInt(1));
-                    rows = rs.getRow();
-                }
-                logger.info("Added " + rows + " ungraded submissions to the grade queue");
-            }
+        try (Connection connection = dbManager.getConnection()) {
+            logger.info("Added " + Grader.getInstance().queueUngradedSubmissions(connection) + " ungraded submissions to the grade queue");
         } catch (SQLException e) {
             logger.error("Failed to check for ungraded submissions", e);
         }
@@ -2,9 +2,15 @@ package edu.rpi.aris.assign.server;
 
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 import edu.rpi.aris.assign.AuthType;
+import edu.rpi.aris.assign.BlobCodec;
+import edu.rpi.aris.assign.BlobStore;
 import edu.rpi.aris.assign.DBUtils;
 import edu.rpi.aris.assign.GradingStatus;
+import edu.rpi.aris.assign.NetUtil;
+import edu.rpi.aris.assign.SubmissionArchiveWriter;
+import edu.rpi.aris.assign.message.MsgUtil;
 import edu.rpi.aris.assign.server.auth.LoginUtil;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
@@ -12,6 +18,8 @@ import org.apache.logging.log4j.Logger;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.encoders.Hex;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
@@ -27,7 +35,9 @@ public class DatabaseManager {
     public static final String DEFAULT_ADMIN_PASS = "ArisAdmin1";
     private static final String[] defaultRoleName = new String[]{"Admin", "Instructor", "TA", "Student"};
     private static final int[] defaultRoleRank = new int[]{0, 1, 2, 3};
-    private static final int DB_SCHEMA_VERSION = 15;
+    private static final int DB_SCHEMA_VERSION = 18;
+    private static final int RECOMPRESS_BATCH_SIZE = 100;
+    private static final int EXPORT_FETCH_SIZE = 100;
     private static Logger logger = LogManager.getLogger(DatabaseManager.class);
 
     static {
@@ -130,14 +140,19 @@ public class DatabaseManager {
                     "constraint uc_ufk foreign key (user_id) references users(id) on delete cascade," +
                     "constraint uc_cfk foreign key (class_id) references class(id) on delete cascade," +
                     "constraint uc_rfk foreign key (role_id) references role(id) on delete restrict);");
+            statement.execute("CREATE TABLE IF NOT EXISTS blob" +
+                    "(hash text NOT NULL PRIMARY KEY," +
+                    "data bytea NOT NULL," +
+                    "ref_count integer NOT NULL);");
             statement.execute("CREATE TABLE IF NOT EXISTS problem" +
                     "(id serial NOT NULL PRIMARY KEY," +
                     "name text NOT NULL," +
-                    "data bytea NOT NULL," +
+                    "blob_hash text NOT NULL," +
                     "created_by text NOT NULL," +
                     "created_on timestamp NOT NULL," +
                     "module_name text NOT NULL," +
-                    "problem_hash text NOT NULL);");
+                    "problem_hash text NOT NULL," +
+                    "constraint p_bfk foreign key (blob_hash) references blob(hash) on delete restrict);");
             statement.execute("CREATE TABLE IF NOT EXISTS assignment" +
                     "(id integer NOT NULL," +
                     "class_id integer NOT NULL," +
@@ -155,15 +170,20 @@ public class DatabaseManager {
                     "assignment_id integer NOT NULL," +
                     "user_id integer NOT NULL," +
                     "problem_id integer NOT NULL," +
-                    "data bytea NOT NULL," +
+                    "blob_hash text NOT NULL," +
                     "time timestamp NOT NULL," +
                     "short_status text NOT NULL," +
                     "status text NOT NULL," +
                     "grade real NOT NULL," +
+                    "graded_problem_hash text," +
                     "constraint submission_short_status_check check (short_status in ('" + GradingStatus.CORRECT.name() + "', '" + GradingStatus.INCORRECT.name() + "', '" + GradingStatus.GRADING.name() + "', '" + GradingStatus.PARTIAL.name() + "'))," +
                     "constraint s_cufk foreign key (user_id, class_id) references user_class(user_id, class_id) on delete cascade," +
                     "constraint s_afk foreign key (assignment_id, class_id, problem_id) references assignment(id, class_id, problem_id) on delete cascade," +
-                    "constraint s_pfk foreign key (problem_id) references problem(id) on delete cascade);");
+                    "constraint s_pfk foreign key (problem_id) references problem(id) on delete cascade," +
+                    "constraint s_bfk foreign key (blob_hash) references blob(hash) on delete restrict);");
+            statement.execute("ALTER TABLE blob ALTER COLUMN data SET STORAGE EXTERNAL;");
+            createBlobTriggers(statement);
+            createGradeMemo(statement);
             statement.execute("CREATE TABLE IF NOT EXISTS permissions" +
                     "(name text NOT NULL PRIMARY KEY," +
                     "role_id integer NOT NULL," +
@@ -522,6 +542,246 @@ public class DatabaseManager {
         } finally {
             connection.setAutoCommit(autoCommit);
         }
+        updateSchema15(connection);
+    }
+
+    private void updateSchema15(Connection connection) throws SQLException {
+        logger.info("Updating database schema to version 16");
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            // existing rows are compressed in the background by startBlobRecompression
+            // the data is compressed by BlobCodec so there is no point in postgres compressing it again. Uncompressed
+            // external storage also lets the header be read without fetching the whole value
+            statement.execute("ALTER TABLE problem ALTER COLUMN data SET STORAGE EXTERNAL;");
+            statement.execute("ALTER TABLE submission ALTER COLUMN data SET STORAGE EXTERNAL;");
+            statement.execute("UPDATE version SET version=16;");
+            connection.commit();
+        } catch (Throwable e) {
+            connection.rollback();
+            logger.error("An error occurred while updating the database schema and the changes were rolled back");
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        updateSchema16(connection);
+    }
+
+    private void updateSchema16(Connection connection) throws SQLException {
+        logger.info("Updating database schema to version 17");
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE blob" +
+                    "(hash text NOT NULL PRIMARY KEY," +
+                    "data bytea NOT NULL," +
+                    "ref_count integer NOT NULL);");
+            statement.execute("ALTER TABLE blob ALTER COLUMN data SET STORAGE EXTERNAL;");
+            statement.execute("ALTER TABLE problem ADD COLUMN blob_hash text;");
+            statement.execute("ALTER TABLE submission ADD COLUMN blob_hash text;");
+            statement.execute("ALTER TABLE submission ADD COLUMN graded_problem_hash text;");
+            moveToBlobs(connection, "problem");
+            moveToBlobs(connection, "submission");
+            statement.execute("UPDATE blob b SET ref_count = (SELECT count(*) FROM problem WHERE blob_hash = b.hash) + (SELECT count(*) FROM submission WHERE blob_hash = b.hash);");
+            statement.execute("ALTER TABLE problem ALTER COLUMN blob_hash SET NOT NULL;");
+            statement.execute("ALTER TABLE submission ALTER COLUMN blob_hash SET NOT NULL;");
+            statement.execute("ALTER TABLE problem ADD CONSTRAINT p_bfk foreign key (blob_hash) references blob(hash) on delete restrict;");
+            statement.execute("ALTER TABLE submission ADD CONSTRAINT s_bfk foreign key (blob_hash) references blob(hash) on delete restrict;");
+            statement.execute("ALTER TABLE problem DROP COLUMN data;");
+            statement.execute("ALTER TABLE submission DROP COLUMN data;");
+            createBlobTriggers(statement);
+            statement.execute("UPDATE version SET version=17;");
+            connection.commit();
+        } catch (Throwable e) {
+            connection.rollback();
+            logger.error("An error occurred while updating the database schema and the changes were rolled back");
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        updateSchema17(connection);
+    }
+
+    private void updateSchema17(Connection connection) throws SQLException {
+        logger.info("Updating database schema to version 18");
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            createGradeMemo(statement);
+            statement.execute("UPDATE version SET version=18;");
+            connection.commit();
+        } catch (Throwable e) {
+            connection.rollback();
+            logger.error("An error occurred while updating the database schema and the changes were rolled back");
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void createGradeMemo(Statement statement) throws SQLException {
+        // grades of previously graded solutions by solution fingerprint, valid while the problem is at problem_hash
+        statement.execute("CREATE TABLE IF NOT EXISTS grade_memo" +
+                "(problem_id integer NOT NULL," +
+                "fingerprint text NOT NULL," +
+                "problem_hash text NOT NULL," +
+                "grade real NOT NULL," +
+                "short_status text NOT NULL," +
+                "status text NOT NULL," +
+                "PRIMARY KEY(problem_id, fingerprint)," +
+                "constraint gm_pfk foreign key (problem_id) references problem(id) on delete cascade);");
+    }
+
+    private void moveToBlobs(Connection connection, String table) throws SQLException {
+        // the data is copied as stored, any rows not compressed yet are compressed by startBlobRecompression
+        try (PreparedStatement select = connection.prepareStatement("SELECT id, data FROM " + table + ";");
+             PreparedStatement insertBlob = connection.prepareStatement("INSERT INTO blob (hash, data, ref_count) VALUES (?, ?, 0) ON CONFLICT (hash) DO NOTHING;");
+             PreparedStatement updateRow = connection.prepareStatement("UPDATE " + table + " SET blob_hash = ? WHERE id = ?;");
+             ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                byte[] data = rs.getBytes(2);
+                String hash;
+                try (InputStream in = BlobCodec.decode(new ByteArrayInputStream(data))) {
+                    hash = BlobStore.hash(IOUtils.toByteArray(in));
+                } catch (IOException e) {
+                    throw new SQLException("Failed to read " + table + " " + rs.getInt(1) + " for hashing", e);
+                }
+                insertBlob.setString(1, hash);
+                insertBlob.setBytes(2, data);
+                insertBlob.executeUpdate();
+                updateRow.setString(1, hash);
+                updateRow.setInt(2, rs.getInt(1));
+                updateRow.addBatch();
+            }
+            updateRow.executeBatch();
+        }
+    }
+
+    private void createBlobTriggers(Statement statement) throws SQLException {
+        // triggers also run for rows removed by cascading deletes, which the messages deleting classes, users,
+        // assignments and problems would otherwise have to account for
+        statement.execute("CREATE OR REPLACE FUNCTION blob_ref() RETURNS trigger AS $$ " +
+                "BEGIN " +
+                "IF TG_OP = 'INSERT' OR TG_OP = 'UPDATE' THEN " +
+                "UPDATE blob SET ref_count = ref_count + 1 WHERE hash = NEW.blob_hash; " +
+                "END IF; " +
+                "IF TG_OP = 'UPDATE' OR TG_OP = 'DELETE' THEN " +
+                "UPDATE blob SET ref_count = ref_count - 1 WHERE hash = OLD.blob_hash; " +
+                "DELETE FROM blob WHERE hash = OLD.blob_hash AND ref_count <= 0; " +
+                "END IF; " +
+                "RETURN NULL; " +
+                "END; $$ LANGUAGE plpgsql;");
+        statement.execute("DROP TRIGGER IF EXISTS problem_blob_ref ON problem;");
+        statement.execute("DROP TRIGGER IF EXISTS submission_blob_ref ON submission;");
+        statement.execute("CREATE TRIGGER problem_blob_ref AFTER INSERT OR DELETE OR UPDATE OF blob_hash ON problem FOR EACH ROW EXECUTE PROCEDURE blob_ref();");
+        statement.execute("CREATE TRIGGER submission_blob_ref AFTER INSERT OR DELETE OR UPDATE OF blob_hash ON submission FOR EACH ROW EXECUTE PROCEDURE blob_ref();");
+    }
+
+    /**
+     * Starts a background thread that compresses the blobs stored before {@link BlobCodec} was used. Blobs are
+     * rewritten in small batches each in their own transaction so the table stays usable while it runs
+     */
+    public void startBlobRecompression() {
+        Thread thread = new Thread(() -> {
+            try {
+                int count = recompressBlobs();
+                if (count > 0)
+                    logger.info("Compressed " + count + " stored problems and submissions");
+            } catch (SQLException e) {
+                logger.error("Failed to compress stored problems", e);
+            }
+        }, "Blob recompression");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private int recompressBlobs() throws SQLException {
+        byte[] header = BlobCodec.getHeader();
+        String lastHash = "";
+        int count = 0;
+        while (true) {
+            int batch = 0;
+            try (Connection connection = getConnection();
+                 PreparedStatement select = connection.prepareStatement("SELECT hash, data FROM blob WHERE hash > ? AND substring(data from 1 for " + header.length + ") <> ? ORDER BY hash LIMIT " + RECOMPRESS_BATCH_SIZE + ";");
+                 PreparedStatement update = connection.prepareStatement("UPDATE blob SET data = ? WHERE hash = ?;")) {
+                select.setString(1, lastHash);
+                select.setBytes(2, header);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastHash = rs.getString(1);
+                        // blobs never change once written so the row can be replaced without checking it
+                        update.setBytes(1, BlobCodec.encode(rs.getBytes(2)));
+                        update.setString(2, lastHash);
+                        update.addBatch();
+                        ++batch;
+                    }
+                }
+                if (batch == 0)
+                    return count;
+                for (int updated : update.executeBatch())
+                    if (updated > 0)
+                        ++count;
+            }
+        }
+    }
+
+    /**
+     * Writes the problems and submissions of an assignment to a {@link edu.rpi.aris.assign.SubmissionArchive}. The
+     * submissions are read through a cursor so only a few are held in memory at a time
+     *
+     * @return the number of submissions written or -1 if the assignment does not exist
+     */
+    public int exportAssignment(int cid, int aid, File file) throws SQLException, IOException {
+        try (Connection connection = getConnection()) {
+            // postgres only uses a cursor for the fetch size inside a transaction
+            connection.setAutoCommit(false);
+            try (PreparedStatement selectAssignment = connection.prepareStatement("SELECT a.name, p.id, p.name, p.module_name, p.blob_hash, b.data FROM assignment a, problem p, blob b WHERE a.id = ? AND a.class_id = ? AND p.id = a.problem_id AND b.hash = p.blob_hash ORDER BY p.id;");
+                 PreparedStatement selectSubmissions = connection.prepareStatement("SELECT s.id, s.time, s.short_status, s.status, s.problem_id, s.user_id, s.grade, p.module_name, s.blob_hash, b.data FROM submission s, problem p, blob b WHERE s.class_id = ? AND s.assignment_id = ? AND p.id = s.problem_id AND b.hash = s.blob_hash ORDER BY s.user_id, s.problem_id, s.id;")) {
+                selectAssignment.setInt(1, aid);
+                selectAssignment.setInt(2, cid);
+                SubmissionArchiveWriter archive = null;
+                boolean written = false;
+                try {
+                    try (ResultSet rs = selectAssignment.executeQuery()) {
+                        while (rs.next()) {
+                            if (archive == null)
+                                archive = new SubmissionArchiveWriter(file, cid, aid, rs.getString(1));
+                            try (InputStream in = rs.getBinaryStream(6)) {
+                                archive.addProblem(rs.getInt(2), rs.getString(3), rs.getString(4), rs.getString(5), in);
+                            }
+                        }
+                    }
+                    if (archive == null)
+                        return -1;
+                    selectSubmissions.setFetchSize(EXPORT_FETCH_SIZE);
+                    selectSubmissions.setInt(1, cid);
+                    selectSubmissions.setInt(2, aid);
+                    try (ResultSet rs = selectSubmissions.executeQuery()) {
+                        while (rs.next()) {
+                            GradingStatus status;
+                            try {
+                                status = GradingStatus.valueOf(rs.getString(3));
+                            } catch (IllegalArgumentException e) {
+                                status = GradingStatus.NONE;
+                            }
+                            MsgUtil.SubmissionInfo info = new MsgUtil.SubmissionInfo(rs.getInt(6), rs.getInt(1), rs.getInt(5), cid, aid, rs.getDouble(7), status, rs.getString(4), NetUtil.localToUTC(rs.getTimestamp(2).toLocalDateTime()));
+                            try (InputStream in = rs.getBinaryStream(10)) {
+                                archive.addSubmission(info, rs.getString(8), rs.getString(9), in);
+                            }
+                        }
+                    }
+                    archive.close();
+                    written = true;
+                    return archive.getSubmissionCount();
+                } finally {
+                    // a failed export must not leave an archive that opens cleanly but is missing submissions
+                    if (archive != null && !written)
+                        archive.abort();
+                }
+            } finally {
+                connection.rollback();
+            }
+        }
     }
 
     public Pair<String, Integer> createUser(String username, String password, String fullName, int roleId, boolean forceReset, AuthType authType) throws SQLException {
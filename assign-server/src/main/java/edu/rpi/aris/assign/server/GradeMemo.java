@@ -0,0 +1,113 @@
+package edu.rpi.aris.assign.server;
+
+import edu.rpi.aris.assign.GradingStatus;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Grades remembered by solution fingerprint in the grade_memo table, so a solution that is structurally identical to
+ * one already graded for the same version of a problem is not graded again. Grades found or computed during a batch are
+ * also kept in memory so identical submissions in the same batch are only graded once. New grades are written to the
+ * table by {@link #write()} together with the batch's results
+ */
+class GradeMemo implements AutoCloseable {
+
+    private final Connection connection;
+    private final PreparedStatement select;
+    private final HashMap<String, Grade> grades = new HashMap<>();
+    private final ArrayList<Grade> added = new ArrayList<>();
+
+    GradeMemo(Connection connection) throws SQLException {
+        this.connection = connection;
+        select = connection.prepareStatement("SELECT grade, short_status, status FROM grade_memo WHERE problem_id = ? AND fingerprint = ? AND problem_hash = ?;");
+    }
+
+    private static String key(int pid, String problemHash, String fingerprint) {
+        return pid + ":" + problemHash + ":" + fingerprint;
+    }
+
+    /**
+     * @return the grade of a solution with the given fingerprint graded against the same version of the problem or
+     * null if there is none
+     */
+    Grade get(int pid, String problemHash, String fingerprint) throws SQLException {
+        String key = key(pid, problemHash, fingerprint);
+        Grade grade = grades.get(key);
+        if (grade != null)
+            return grade;
+        select.setInt(1, pid);
+        select.setString(2, fingerprint);
+        select.setString(3, problemHash);
+        try (ResultSet rs = select.executeQuery()) {
+            if (!rs.next())
+                return null;
+            GradingStatus status;
+            try {
+                status = GradingStatus.valueOf(rs.getString(2));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            grade = new Grade(pid, problemHash, fingerprint, rs.getDouble(1), status, rs.getString(3));
+        }
+        grades.put(key, grade);
+        return grade;
+    }
+
+    void put(int pid, String problemHash, String fingerprint, double grade, GradingStatus status, String statusStr) {
+        Grade g = new Grade(pid, problemHash, fingerprint, grade, status, statusStr);
+        grades.put(key(pid, problemHash, fingerprint), g);
+        added.add(g);
+    }
+
+    /**
+     * Stores the grades added since the last write. A grade stored for an older version of the problem is replaced
+     */
+    void write() throws SQLException {
+        if (added.isEmpty())
+            return;
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO grade_memo (problem_id, fingerprint, problem_hash, grade, short_status, status) VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (problem_id, fingerprint) DO UPDATE SET problem_hash = EXCLUDED.problem_hash, grade = EXCLUDED.grade, short_status = EXCLUDED.short_status, status = EXCLUDED.status;")) {
+            for (Grade g : added) {
+                insert.setInt(1, g.pid);
+                insert.setString(2, g.fingerprint);
+                insert.setString(3, g.problemHash);
+                insert.setDouble(4, g.grade);
+                insert.setString(5, g.status.name());
+                insert.setString(6, g.statusStr);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        added.clear();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        select.close();
+    }
+
+    static class Grade {
+
+        private final int pid;
+        private final String problemHash;
+        private final String fingerprint;
+        final double grade;
+        final GradingStatus status;
+        final String statusStr;
+
+        private Grade(int pid, String problemHash, String fingerprint, double grade, GradingStatus status, String statusStr) {
+            this.pid = pid;
+            this.problemHash = problemHash;
+            this.fingerprint = fingerprint;
+            this.grade = grade;
+            this.status = status;
+            this.statusStr = statusStr;
+        }
+
+    }
+
+}
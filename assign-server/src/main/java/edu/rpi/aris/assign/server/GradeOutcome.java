@@ -0,0 +1,54 @@
+package edu.rpi.aris.assign.server;
+
+import edu.rpi.aris.assign.ArisServerModule;
+import edu.rpi.aris.assign.AutoGrader;
+import edu.rpi.aris.assign.Problem;
+import edu.rpi.aris.assign.spi.ArisModule;
+
+/**
+ * The result of running a module's {@link AutoGrader} on a submission, either on a grading thread or in a
+ * {@link GradingWorker} process
+ */
+class GradeOutcome {
+
+    final boolean matches;
+    final String fingerprint;
+    final double grade;
+    final boolean reused;
+
+    GradeOutcome(boolean matches, String fingerprint, double grade, boolean reused) {
+        this.matches = matches;
+        this.fingerprint = fingerprint;
+        this.grade = grade;
+        this.reused = reused;
+    }
+
+    /**
+     * Checks the solution against the problem and grades it unless a grade is already known for its fingerprint
+     *
+     * @param known looks up the grade of an identical solution
+     */
+    static <T extends ArisModule> GradeOutcome grade(ArisModule<T> module, Problem<T> problem, Problem<T> solution, KnownGrades known) throws Exception {
+        ArisServerModule<T> server = module.getServerModule();
+        if (server == null)
+            throw new Exception(module.getModuleName() + " is missing the server module");
+        AutoGrader<T> grader = server.getAutoGrader();
+        if (!grader.isSolutionForProblem(problem, solution))
+            return new GradeOutcome(false, null, 0, false);
+        String fingerprint = grader.getFingerprint(solution);
+        Double grade = fingerprint == null ? null : known.get(fingerprint);
+        if (grade != null)
+            return new GradeOutcome(true, fingerprint, grade, true);
+        return new GradeOutcome(true, fingerprint, grader.gradeSolution(solution), false);
+    }
+
+    interface KnownGrades {
+
+        /**
+         * @return the grade of a solution with the given fingerprint or null if there is none
+         */
+        Double get(String fingerprint) throws Exception;
+
+    }
+
+}
@@ -0,0 +1,206 @@
+package edu.rpi.aris.assign.server;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * The queue of submissions waiting for the {@link Grader}. Submissions are handed out class by class in weighted round
+ * robin order and user by user within a class, so a class or a student resubmitting in bulk only slows down their own
+ * grading. A class with an assignment due within {@link #DEADLINE_WINDOW_MILLIS} gets {@link #URGENT_WEIGHT} turns per
+ * round instead of one, and each user's submissions are handed out earliest due date first.
+ * <p>
+ * Submission ids are tracked from the time they are queued until the grader reports them finished, so a submission
+ * queued twice is only graded once. The queue holds at most a fixed number of submissions. Submissions that do not fit
+ * stay marked as grading in the database and are queued again once the queue has drained to half its capacity
+ */
+class GradeScheduler {
+
+    static final long DEADLINE_WINDOW_MILLIS = 2 * 60 * 60 * 1000;
+    static final int URGENT_WEIGHT = 4;
+
+    private final int capacity;
+    private final ArrayDeque<ClassQueue> ring = new ArrayDeque<>();
+    private final HashMap<Integer, ClassQueue> classes = new HashMap<>();
+    private final HashSet<Integer> inFlight = new HashSet<>();
+    private int size;
+    private int overflow;
+    private boolean refill;
+
+    GradeScheduler(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The queue capacity must be greater than 0");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues a submission for grading
+     *
+     * @param dueDate the due date of the submission's assignment or null if it is unknown
+     * @return false if the queue is full and the submission was not queued
+     */
+    synchronized boolean add(int submissionId, int classId, int userId, ZonedDateTime dueDate) {
+        if (inFlight.contains(submissionId))
+            return true;
+        if (size >= capacity) {
+            ++overflow;
+            return false;
+        }
+        inFlight.add(submissionId);
+        ClassQueue c = classes.get(classId);
+        if (c == null) {
+            c = new ClassQueue(classId);
+            classes.put(classId, c);
+            ring.add(c);
+        }
+        c.add(new Task(submissionId, userId, dueDate == null ? Long.MAX_VALUE : dueDate.toInstant().toEpochMilli()));
+        ++size;
+        notify();
+        return true;
+    }
+
+    /**
+     * Waits for at least one submission to be queued and removes up to max submissions in scheduling order, taking no
+     * more than an even share of the queue so the other grading threads are not left idle
+     *
+     * @param threads the number of threads taking from the queue
+     * @return the ids of the removed submissions
+     */
+    synchronized ArrayList<Integer> take(int max, int threads) throws InterruptedException {
+        while (size == 0)
+            wait();
+        max = Math.min(max, (size + threads - 1) / threads);
+        long now = System.currentTimeMillis();
+        ArrayList<Integer> batch = new ArrayList<>();
+        while (batch.size() < max && size > 0) {
+            ClassQueue c = ring.peek();
+            if (c.credits <= 0)
+                c.credits = c.isUrgent(now) ? URGENT_WEIGHT : 1;
+            batch.add(c.poll().submissionId);
+            --size;
+            --c.credits;
+            if (c.isEmpty()) {
+                ring.poll();
+                classes.remove(c.classId);
+            } else if (c.credits <= 0) {
+                ring.poll();
+                ring.add(c);
+            }
+        }
+        if (overflow > 0 && size <= capacity / 2) {
+            overflow = 0;
+            refill = true;
+        }
+        // other grading threads may still have work to take
+        if (size > 0)
+            notify();
+        return batch;
+    }
+
+    /**
+     * Marks the submissions as graded so they can be queued again
+     */
+    synchronized void finished(Collection<Integer> submissionIds) {
+        inFlight.removeAll(submissionIds);
+    }
+
+    /**
+     * Returns true once if submissions were turned away since the last time this returned true and the queue now has
+     * room for them
+     */
+    synchronized boolean needsRefill() {
+        boolean r = refill;
+        refill = false;
+        return r;
+    }
+
+    /**
+     * @return the ids of every queued submission and every submission being graded
+     */
+    synchronized Integer[] getInFlight() {
+        return inFlight.toArray(new Integer[0]);
+    }
+
+    synchronized int remainingCapacity() {
+        return capacity - size;
+    }
+
+    /**
+     * @return the number of submissions waiting to be graded, including any that did not fit in the queue
+     */
+    synchronized int getBacklog() {
+        return size + overflow;
+    }
+
+    private static class Task {
+
+        private final int submissionId;
+        private final int userId;
+        private final long due;
+
+        private Task(int submissionId, int userId, long due) {
+            this.submissionId = submissionId;
+            this.userId = userId;
+            this.due = due;
+        }
+
+    }
+
+    private static class ClassQueue {
+
+        private final int classId;
+        private final ArrayDeque<UserQueue> ring = new ArrayDeque<>();
+        private final HashMap<Integer, UserQueue> users = new HashMap<>();
+        // the turns the class has left in the current round
+        private int credits;
+
+        private ClassQueue(int classId) {
+            this.classId = classId;
+        }
+
+        private void add(Task task) {
+            UserQueue u = users.get(task.userId);
+            if (u == null) {
+                u = new UserQueue(task.userId);
+                users.put(task.userId, u);
+                ring.add(u);
+            }
+            u.tasks.add(task);
+        }
+
+        private Task poll() {
+            UserQueue u = ring.poll();
+            Task task = u.tasks.poll();
+            if (u.tasks.isEmpty())
+                users.remove(u.userId);
+            else
+                ring.add(u);
+            return task;
+        }
+
+        private boolean isEmpty() {
+            return ring.isEmpty();
+        }
+
+        private boolean isUrgent(long now) {
+            for (UserQueue u : ring) {
+                long due = u.tasks.peek().due;
+                if (due >= now && due - now <= DEADLINE_WINDOW_MILLIS)
+                    return true;
+            }
+            return false;
+        }
+
+    }
+
+    private static class UserQueue {
+
+        private final int userId;
+        private final PriorityQueue<Task> tasks = new PriorityQueue<>(Comparator.<Task>comparingLong(t -> t.due).thenComparingInt(t -> t.submissionId));
+
+        private UserQueue(int userId) {
+            this.userId = userId;
+        }
+
+    }
+
+}
@@ -2,103 +2,295 @@ package edu.rpi.aris.assign.server;
 
 import edu.rpi.aris.assign.*;
 import edu.rpi.aris.assign.spi.ArisModule;
-import org.apache.commons.lang3.tuple.ImmutableTriple;
-import org.apache.commons.lang3.tuple.Triple;
+import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.*;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 
 public class Grader {
 
     private static final Logger log = LogManager.getLogger();
-    private static final Grader instance = new Grader(AssignServerMain.getServer().getConfig().getGradeThreads());
+    // the most submissions graded and written back in one transaction
+    private static final int MAX_BATCH_SIZE = 64;
+    private static final Grader instance = new Grader(AssignServerMain.getServer().getConfig());
     private final ThreadPoolExecutor executor;
+    private final GradeScheduler scheduler;
+    // null when submissions are graded on the grading threads
+    private final GradingWorkerPool workers;
+    private final ProblemCache problemCache = new ProblemCache(AssignServerMain.getServer().getConfig().getProblemCacheSize());
 
-    private Grader(int threads) {
+    private Grader(ServerConfig config) {
+        int threads = config.getGradeThreads();
         if (threads <= 0)
             throw new IllegalArgumentException("Threads must be greater than 0");
+        scheduler = new GradeScheduler(config.getGradeQueueSize());
+        workers = config.useGradeWorkers() ? new GradingWorkerPool(threads, config.getGradeWorkerHeap(), config.getGradeTimeout() * 1000L, new File(config.getStorageDir(), "modules")) : null;
         executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads, new NamedThreadFactory("Grading thread", true));
+        for (int i = 0; i < threads; ++i)
+            executor.submit(this::gradeLoop);
     }
 
     public static Grader getInstance() {
         return instance;
     }
 
-    public void addToGradeQueue(int submissionId) {
-        log.info("Adding submission " + submissionId + " to grade queue");
-        executor.submit(() -> grade(submissionId));
+    /**
+     * Queues a submission for grading. A submission that is already queued or being graded is not queued again
+     *
+     * @param dueDate the due date of the submission's assignment
+     * @return false if the queue is full. The submission is queued once the queue has room
+     */
+    public boolean addToGradeQueue(int submissionId, int classId, int userId, ZonedDateTime dueDate) {
+        boolean queued = scheduler.add(submissionId, classId, userId, dueDate);
+        if (queued)
+            log.info("Adding submission " + submissionId + " to grade queue");
+        else
+            log.info("Grade queue is full. Submission " + submissionId + " will be queued later");
+        return queued;
     }
 
-    private void grade(int submissionId) {
+    /**
+     * @return the number of submissions waiting to be graded
+     */
+    public int getBacklog() {
+        return scheduler.getBacklog();
+    }
+
+    /**
+     * Queues submissions left marked as grading that are not already queued, earliest due date first, until the queue
+     * is full
+     *
+     * @return the number of submissions queued
+     */
+    public int queueUngradedSubmissions(Connection connection) throws SQLException {
+        int room = scheduler.remainingCapacity();
+        if (room <= 0)
+            return 0;
+        try (PreparedStatement select = connection.prepareStatement("SELECT s.id, s.class_id, s.user_id, a.due_date FROM submission s JOIN assignment a ON a.id = s.assignment_id AND a.class_id = s.class_id AND a.problem_id = s.problem_id WHERE s.short_status = ? AND NOT (s.id = ANY (?)) ORDER BY a.due_date, s.id LIMIT ?;")) {
+            select.setString(1, GradingStatus.GRADING.name());
+            select.setArray(2, connection.createArrayOf("INTEGER", scheduler.getInFlight()));
+            select.setInt(3, room);
+            int count = 0;
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    if (!addToGradeQueue(rs.getInt(1), rs.getInt(2), rs.getInt(3), NetUtil.localToUTC(rs.getTimestamp(4).toLocalDateTime())))
+                        break;
+                    ++count;
+                }
+            }
+            return count;
+        }
+    }
+
+    private void gradeLoop() {
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            ArrayList<Integer> batch;
+            try {
+                // batches only grow past one submission per thread once there is a backlog
+                batch = scheduler.take(MAX_BATCH_SIZE, executor.getMaximumPoolSize());
+            } catch (InterruptedException e) {
+                return;
+            }
+            // nothing reads this task's future, so an error escaping the loop would silently stop the thread grading
+            try {
+                gradeBatch(batch);
+            } catch (Throwable e) {
+                log.error("An error occurred while grading submissions " + batch, e);
+            } finally {
+                scheduler.finished(batch);
+            }
+            if (scheduler.needsRefill())
+                refill();
+        }
+    }
+
+    /**
+     * Grades a batch of submissions in one transaction. If the transaction is rolled back the submissions are graded
+     * again one per transaction, so a single failing submission does not leave the rest of the batch ungraded
+     */
+    private void gradeBatch(ArrayList<Integer> batch) {
+        try {
+            if (gradeInTransaction(batch) || batch.size() == 1)
+                return;
+            log.info("Grading submissions " + batch + " one at a time");
+            for (int sid : batch)
+                gradeInTransaction(new ArrayList<>(Collections.singletonList(sid)));
+        } catch (SQLException e) {
+            log.error("An error occurred while trying to obtain a database connection", e);
+        }
+    }
+
+    /**
+     * @return false if grading failed and the transaction was rolled back
+     */
+    private boolean gradeInTransaction(ArrayList<Integer> submissions) throws SQLException {
         try (Connection connection = AssignServerMain.getServer().getDbManager().getConnection()) {
             try {
                 connection.setAutoCommit(false);
-                grade(connection, submissionId);
+                grade(connection, submissions);
                 connection.commit();
-            } catch (Exception e) {
+                return true;
+            } catch (Throwable e) {
                 connection.rollback();
-                log.error("An error occurred while grading the submission", e);
+                log.error("An error occurred while grading submissions " + submissions, e);
+                return false;
             }
+        }
+    }
+
+    private void refill() {
+        try (Connection connection = AssignServerMain.getServer().getDbManager().getConnection()) {
+            log.info("Queued " + queueUngradedSubmissions(connection) + " submissions that did not fit in the grade queue");
         } catch (SQLException e) {
-            log.error("An error occurred while trying to obtain a database connection", e);
+            log.error("Failed to queue ungraded submissions", e);
         }
     }
 
-    private <T extends ArisModule> Triple<Problem<T>, Problem<T>, ArisModule<T>> getProblems(Connection connection, int submissionId) throws Exception {
-        try (PreparedStatement subStmt = connection.prepareStatement("SELECT problem_id, data FROM submission WHERE id=?;");
-             PreparedStatement probStmt = connection.prepareStatement("SELECT module_name, data FROM problem WHERE id=?;")) {
-            subStmt.setInt(1, submissionId);
-            try (ResultSet sub = subStmt.executeQuery()) {
-                if (!sub.next()) {
-                    log.error("Failed to grade submission " + submissionId + ": submission does not exist");
+    private void grade(Connection connection, ArrayList<Integer> batch) throws SQLException {
+        log.info("Grading " + batch.size() + " submissions");
+        ArrayList<GradeResult> results = new ArrayList<>();
+        HashSet<Integer> missing = new HashSet<>(batch);
+        // ordering by problem grades the submissions for each problem together so the problem is only looked up once
+        try (GradeMemo memo = new GradeMemo(connection);
+             PreparedStatement select = connection.prepareStatement("SELECT s.id, s.problem_id, b.data, p.module_name, p.blob_hash FROM submission s JOIN blob b ON b.hash = s.blob_hash LEFT JOIN problem p ON p.id = s.problem_id WHERE s.id = ANY (?) ORDER BY s.problem_id, s.id;")) {
+            Array array = connection.createArrayOf("INTEGER", batch.toArray());
+            select.setArray(1, array);
+            // submissions are fetched in chunks rather than the whole batch being held in memory at once
+            select.setFetchSize(16);
+            try (ResultSet rs = select.executeQuery()) {
+                Problem<?> problem = null;
+                int problemId = -1;
+                while (rs.next()) {
+                    int sid = rs.getInt(1);
+                    int pid = rs.getInt(2);
+                    missing.remove(sid);
+                    if (pid != problemId) {
+                        problemId = pid;
+                        problem = null;
+                    }
+                    GradeResult result = grade(connection, memo, sid, pid, rs.getString(4), rs.getString(5), problem, rs.getBinaryStream(3));
+                    problem = result.problem;
+                    results.add(result);
+                }
+            }
+            memo.write();
+        }
+        for (int sid : missing)
+            log.error("Failed to grade submission " + sid + ": submission does not exist");
+        try (PreparedStatement updateGrade = connection.prepareStatement("UPDATE submission SET grade=?, short_status=?, status=?, graded_problem_hash=? WHERE id=?;")) {
+            for (GradeResult result : results) {
+                updateGrade.setDouble(1, result.grade);
+                updateGrade.setString(2, result.status.name());
+                updateGrade.setString(3, result.statusStr);
+                updateGrade.setString(4, result.gradedProblemHash);
+                updateGrade.setInt(5, result.submissionId);
+                updateGrade.addBatch();
+            }
+            updateGrade.executeBatch();
+        }
+        for (GradeResult result : results)
+            log.info("Graded submission " + result.submissionId + " Grade: " + result.grade + " " + result.status.name());
+    }
+
+    private <T extends ArisModule> Problem<T> getProblem(Connection connection, ProblemConverter<T> converter, int pid, String blobHash) throws Exception {
+        Problem<T> problem = problemCache.get(pid, blobHash);
+        if (problem != null)
+            return problem;
+        byte[] data = getProblemData(connection, pid, blobHash);
+        if (data == null)
+            return null;
+        problem = converter.loadProblem(new ByteArrayInputStream(data), false);
+        problemCache.put(pid, blobHash, problem);
+        return problem;
+    }
+
+    private byte[] getProblemData(Connection connection, int pid, String blobHash) throws SQLException, IOException {
+        try (PreparedStatement probStmt = connection.prepareStatement("SELECT data FROM blob WHERE hash=?;")) {
+            probStmt.setString(1, blobHash);
+            try (ResultSet prob = probStmt.executeQuery()) {
+                if (!prob.next()) {
+                    log.error("Failed to get problem " + pid + ": problem data does not exist");
                     return null;
                 }
-                int pid = sub.getInt(1);
-                probStmt.setInt(1, pid);
-                try (ResultSet prob = probStmt.executeQuery()) {
-                    if (!prob.next()) {
-                        log.error("Failed to get problem " + pid + ": problem does not exist. (How did this happen?)");
-                        return null;
-                    }
-                    String moduleName = prob.getString(1);
-                    ArisModule<T> module = ModuleService.getService().getModule(moduleName);
-                    if (module == null) {
-                        log.error("Missing aris module \"" + moduleName + "\" Cannot grade submission");
-                        return null;
-                    }
-                    ProblemConverter<T> converter = module.getProblemConverter();
-                    Problem<T> problem = converter.loadProblem(prob.getBinaryStream(2), false);
-                    Problem<T> solution = converter.loadProblem(sub.getBinaryStream(2), true);
-                    return new ImmutableTriple<>(problem, solution, module);
+                try (InputStream in = BlobCodec.decode(prob.getBinaryStream(1))) {
+                    return IOUtils.toByteArray(in);
                 }
             }
         }
     }
 
-    private <T extends ArisModule> void grade(Connection connection, int submissionId) throws Exception {
-        log.info("Grading submission " + submissionId);
+    /**
+     * Drops the parsed copy of the problem. Called when a problem is edited or deleted
+     */
+    public void invalidateProblem(int pid) {
+        problemCache.invalidate(pid);
+    }
+
+    /**
+     * Grades a single submission of a batch
+     *
+     * @param memo    the grades already known for the batch's solutions
+     * @param problem the problem loaded for the previous submission if it was for the same problem, otherwise null
+     * @param data    the stored submission data
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends ArisModule> GradeResult grade(Connection connection, GradeMemo memo, int submissionId, int pid, String moduleName, String problemHash, Problem<?> problem, InputStream data) {
         double grade;
         GradingStatus status;
         String statusStr;
+        String gradedProblemHash = null;
         try {
-            Triple<Problem<T>, Problem<T>, ArisModule<T>> problems = getProblems(connection, submissionId);
-            if (problems == null)
+            if (problemHash == null) {
+                log.error("Failed to get problem " + pid + ": problem does not exist. (How did this happen?)");
+                throw new ArisException("An error occurred loading the problem from the database. Check the logs for more info");
+            }
+            ArisModule<T> module = ModuleService.getService().getModule(moduleName);
+            if (module == null) {
+                log.error("Missing aris module \"" + moduleName + "\" Cannot grade submission");
                 throw new ArisException("An error occurred loading the problem from the database. Check the logs for more info");
-            Problem<T> problem = problems.getLeft();
-            Problem<T> solution = problems.getMiddle();
-            ArisModule<T> module = problems.getRight();
-            ArisServerModule<T> server = module.getServerModule();
-            if (server == null)
-                throw new Exception(module.getModuleName() + " is missing the server module");
-            AutoGrader<T> grader = server.getAutoGrader();
-            if (grader.isSolutionForProblem(problem, solution)) {
-                grade = grader.gradeSolution(solution);
+            }
+            GradeOutcome.KnownGrades known = fingerprint -> {
+                GradeMemo.Grade g = memo.get(pid, problemHash, fingerprint);
+                return g == null ? null : g.grade;
+            };
+            GradeOutcome outcome;
+            if (workers != null) {
+                byte[] solution;
+                try (InputStream in = BlobCodec.decode(data)) {
+                    solution = IOUtils.toByteArray(in);
+                }
+                outcome = workers.grade(pid, moduleName, problemHash, solution, () -> {
+                    byte[] problemData = getProblemData(connection, pid, problemHash);
+                    if (problemData == null)
+                        throw new ArisException("An error occurred loading the problem from the database. Check the logs for more info");
+                    return problemData;
+                }, known);
+            } else {
+                ProblemConverter<T> converter = module.getProblemConverter();
+                if (problem == null)
+                    problem = getProblem(connection, converter, pid, problemHash);
+                if (problem == null)
+                    throw new ArisException("An error occurred loading the problem from the database. Check the logs for more info");
+                // closing the solution hands its native resources back right away instead of waiting on the garbage collector.
+                // The problem is shared through the cache and is left open
+                try (Problem<T> solution = converter.loadProblem(BlobCodec.decode(data), true)) {
+                    outcome = GradeOutcome.grade(module, (Problem<T>) problem, solution, known);
+                }
+            }
+            if (outcome.matches) {
+                grade = outcome.grade;
                 if (grade < 0)
                     grade = 0;
                 if (grade > 1)
@@ -113,24 +305,51 @@ public class Grader {
                     status = GradingStatus.PARTIAL;
                     statusStr = "Partial Credit";
                 }
+                if (outcome.reused)
+                    log.info("Reused the grade of an identical solution for submission " + submissionId);
+                else if (outcome.fingerprint != null)
+                    memo.put(pid, problemHash, outcome.fingerprint, grade, status, statusStr);
             } else {
                 status = GradingStatus.INCORRECT;
                 statusStr = "The solution does not match the assigned problem";
                 grade = 0;
             }
+            gradedProblemHash = problemHash;
         } catch (Exception e) {
             status = GradingStatus.ERROR;
             statusStr = e.getMessage();
             grade = 0;
+        } catch (Throwable e) {
+            // such as a stack overflow on a very deep proof. Recorded against the submission so the rest of the batch
+            // is still graded
+            log.error("An error occurred while grading submission " + submissionId, e);
+            status = GradingStatus.ERROR;
+            statusStr = "An error occurred while grading the submission";
+            grade = 0;
         }
-        try (PreparedStatement updateGrade = connection.prepareStatement("UPDATE submission SET grade=?, short_status=?, status=? WHERE id=?;")) {
-            updateGrade.setDouble(1, grade);
-            updateGrade.setString(2, status.name());
-            updateGrade.setString(3, statusStr);
-            updateGrade.setInt(4, submissionId);
-            updateGrade.executeUpdate();
+        return new GradeResult(submissionId, grade, status, statusStr, gradedProblemHash, problem);
+    }
+
+    private static class GradeResult {
+
+        private final int submissionId;
+        private final double grade;
+        private final GradingStatus status;
+        private final String statusStr;
+        // the blob the problem was loaded from, recorded with the grade so identical submissions can reuse it
+        private final String gradedProblemHash;
+        // kept so the next submission for the same problem does not have to look it up again
+        private final Problem<?> problem;
+
+        private GradeResult(int submissionId, double grade, GradingStatus status, String statusStr, String gradedProblemHash, Problem<?> problem) {
+            this.submissionId = submissionId;
+            this.grade = grade;
+            this.status = status;
+            this.statusStr = statusStr;
+            this.gradedProblemHash = gradedProblemHash;
+            this.problem = problem;
         }
-        log.info("Graded submission " + submissionId + " Grade: " + grade + " " + status.name());
+
     }
 
 }
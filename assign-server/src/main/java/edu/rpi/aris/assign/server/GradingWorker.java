@@ -0,0 +1,144 @@
+package edu.rpi.aris.assign.server;
+
+import edu.rpi.aris.assign.LibAssign;
+import edu.rpi.aris.assign.ModuleService;
+import edu.rpi.aris.assign.Problem;
+import edu.rpi.aris.assign.ProblemConverter;
+import edu.rpi.aris.assign.spi.ArisModule;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+
+/**
+ * The entry point of a grading worker process started by {@link GradingWorkerPool}. The worker reads submissions from
+ * stdin and writes results to stdout, so nothing else may be written to stdout and logging goes to stderr. The worker
+ * keeps its own cache of parsed problems and asks for a problem's data only when it has not parsed it yet.
+ * <p>
+ * Each request is a {@link #GRADE} message followed by an exchange that ends with {@link #RESULT} or {@link #ERROR}:
+ * <pre>
+ * parent: GRADE int problem id, utf module name, utf problem blob hash, bytes decoded submission data
+ * worker: NEED_PROBLEM                          parent: bytes decoded problem data
+ * worker: FINGERPRINT utf fingerprint           parent: KNOWN double grade or UNKNOWN
+ * worker: RESULT boolean matches, boolean has fingerprint, [utf fingerprint], double grade, boolean reused
+ * worker: ERROR utf message
+ * </pre>
+ * bytes is an int length followed by the data
+ */
+public class GradingWorker {
+
+    static final byte GRADE = 1;
+    static final byte NEED_PROBLEM = 2;
+    static final byte FINGERPRINT = 3;
+    static final byte KNOWN = 4;
+    static final byte UNKNOWN = 5;
+    static final byte RESULT = 6;
+    static final byte ERROR = 7;
+    private static final int PROBLEM_CACHE_SIZE = 64;
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ProblemCache problems = new ProblemCache(PROBLEM_CACHE_SIZE);
+
+    private GradingWorker(InputStream in, OutputStream out) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    public static void main(String[] args) throws IOException {
+        // stdout carries results, everything else printed goes to stderr instead
+        PrintStream results = new PrintStream(new FileOutputStream(FileDescriptor.out), false);
+        System.setOut(System.err);
+        Logger log = LogManager.getLogger(GradingWorker.class);
+        if (args.length != 1) {
+            log.fatal("Usage: GradingWorker <module directory>");
+            System.exit(1);
+        }
+        LibAssign.initModuleService(new File(args[0]), true);
+        new GradingWorker(System.in, results).run();
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            throw new IOException("Invalid message length " + length);
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    private void run() throws IOException {
+        int type;
+        while ((type = in.read()) != -1) {
+            if (type != GRADE)
+                throw new IOException("Unexpected message " + type);
+            int pid = in.readInt();
+            String moduleName = in.readUTF();
+            String problemHash = in.readUTF();
+            byte[] solution = readBytes(in);
+            try {
+                GradeOutcome outcome = grade(pid, moduleName, problemHash, solution);
+                out.writeByte(RESULT);
+                out.writeBoolean(outcome.matches);
+                out.writeBoolean(outcome.fingerprint != null);
+                if (outcome.fingerprint != null)
+                    out.writeUTF(outcome.fingerprint);
+                out.writeDouble(outcome.grade);
+                out.writeBoolean(outcome.reused);
+            } catch (UncheckedIOException e) {
+                // the parent has gone away
+                throw e.getCause();
+            } catch (Exception e) {
+                out.writeByte(ERROR);
+                out.writeUTF(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            }
+            out.flush();
+        }
+    }
+
+    private <T extends ArisModule> GradeOutcome grade(int pid, String moduleName, String problemHash, byte[] data) throws Exception {
+        ArisModule<T> module = ModuleService.getService().getModule(moduleName);
+        if (module == null)
+            throw new Exception("Missing aris module \"" + moduleName + "\" Cannot grade submission");
+        ProblemConverter<T> converter = module.getProblemConverter();
+        Problem<T> problem = problems.get(pid, problemHash);
+        if (problem == null) {
+            problem = converter.loadProblem(new ByteArrayInputStream(requestProblem()), false);
+            if (problem == null)
+                throw new Exception("Failed to load problem " + pid);
+            problems.put(pid, problemHash, problem);
+        }
+        try (Problem<T> solution = converter.loadProblem(new ByteArrayInputStream(data), true)) {
+            return GradeOutcome.grade(module, problem, solution, this::requestGrade);
+        }
+    }
+
+    // failures talking to the parent are unchecked so they are not mistaken for a submission that failed to load
+
+    private byte[] requestProblem() {
+        try {
+            out.writeByte(NEED_PROBLEM);
+            out.flush();
+            return readBytes(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Double requestGrade(String fingerprint) {
+        try {
+            out.writeByte(FINGERPRINT);
+            out.writeUTF(fingerprint);
+            out.flush();
+            return in.readByte() == KNOWN ? in.readDouble() : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
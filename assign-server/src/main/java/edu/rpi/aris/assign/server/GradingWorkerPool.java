@@ -0,0 +1,189 @@
+package edu.rpi.aris.assign.server;
+
+import edu.rpi.aris.assign.ArisException;
+import edu.rpi.aris.assign.NamedThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+
+/**
+ * Grades submissions in separate {@link GradingWorker} processes so a submission that hangs in native code or uses too
+ * much memory only costs a worker rather than a grading thread. Each worker has a maximum heap and each submission a
+ * wall clock budget. A worker that runs over its budget, runs out of memory or crashes is killed and a new one is
+ * started in its place. Workers are started ahead of time and reused, so a submission does not pay for starting a JVM
+ */
+class GradingWorkerPool {
+
+    // the exit code of a JVM started with -XX:+ExitOnOutOfMemoryError that ran out of memory
+    private static final int OUT_OF_MEMORY_EXIT = 3;
+    private static final Logger log = LogManager.getLogger(GradingWorkerPool.class);
+
+    private final ArrayList<String> command = new ArrayList<>();
+    private final long timeoutMillis;
+    private final ArrayBlockingQueue<Worker> idle;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Grading worker watchdog", true));
+
+    /**
+     * @param workers         the number of workers to keep running
+     * @param heapMegabytes   the maximum heap of each worker
+     * @param timeoutMillis   the longest a single submission may take
+     * @param moduleDirectory the directory the workers load modules from
+     */
+    GradingWorkerPool(int workers, int heapMegabytes, long timeoutMillis, File moduleDirectory) {
+        this.timeoutMillis = timeoutMillis;
+        idle = new ArrayBlockingQueue<>(workers);
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-Xmx" + heapMegabytes + "m");
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(GradingWorker.class.getName());
+        command.add(moduleDirectory.getAbsolutePath());
+        for (int i = 0; i < workers; ++i)
+            watchdog.execute(this::replaceWorker);
+    }
+
+    private Worker start() throws IOException {
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        return new Worker(process);
+    }
+
+    private void replaceWorker() {
+        try {
+            Worker worker = start();
+            if (!idle.offer(worker))
+                worker.kill();
+        } catch (IOException e) {
+            log.error("Failed to start a grading worker", e);
+        }
+    }
+
+    /**
+     * Grades a submission in a worker
+     *
+     * @param problemHash the hash of the blob the problem is stored in. Workers keep parsed problems by this hash
+     * @param solution    the decoded submission data
+     * @param problem     supplies the decoded problem data if the worker has not parsed the problem yet
+     * @param known       looks up the grade of an identical solution
+     * @throws ArisException if the submission could not be graded within its budget
+     */
+    GradeOutcome grade(int pid, String moduleName, String problemHash, byte[] solution, ProblemData problem, GradeOutcome.KnownGrades known) throws Exception {
+        Worker worker = idle.poll();
+        if (worker == null || !worker.process.isAlive())
+            worker = start();
+        Worker w = worker;
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            w.timedOut = true;
+            w.kill();
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        boolean healthy = false;
+        try {
+            GradeOutcome outcome = worker.grade(pid, moduleName, problemHash, solution, problem, known);
+            healthy = true;
+            return outcome;
+        } catch (ArisException e) {
+            // the worker reported the error itself and is ready for the next submission
+            healthy = true;
+            throw e;
+        } catch (ExecutionException e) {
+            // the server failed to answer the worker, which is left waiting on the answer and has to be replaced
+            throw (Exception) e.getCause();
+        } catch (IOException e) {
+            worker.kill();
+            if (worker.timedOut)
+                throw new ArisException("Grading took longer than " + timeoutMillis / 1000 + " seconds");
+            if (worker.process.waitFor(1, TimeUnit.SECONDS) && worker.process.exitValue() == OUT_OF_MEMORY_EXIT)
+                throw new ArisException("The submission used too much memory to grade");
+            log.error("Grading worker failed", e);
+            throw new ArisException("The grading worker failed");
+        } finally {
+            timeout.cancel(false);
+            if (healthy && !worker.timedOut && idle.offer(worker))
+                worker = null;
+            if (worker != null) {
+                worker.kill();
+                watchdog.execute(this::replaceWorker);
+            }
+        }
+    }
+
+    interface ProblemData {
+
+        byte[] get() throws Exception;
+
+    }
+
+    private static class Worker {
+
+        private final Process process;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private volatile boolean timedOut;
+
+        private Worker(Process process) {
+            this.process = process;
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        }
+
+        /**
+         * @throws ArisException      if the worker reported an error and is ready for the next submission
+         * @throws ExecutionException if the problem data or a known grade could not be supplied to the worker
+         */
+        private GradeOutcome grade(int pid, String moduleName, String problemHash, byte[] solution, ProblemData problem, GradeOutcome.KnownGrades known) throws Exception {
+            out.writeByte(GradingWorker.GRADE);
+            out.writeInt(pid);
+            out.writeUTF(moduleName);
+            out.writeUTF(problemHash);
+            GradingWorker.writeBytes(out, solution);
+            out.flush();
+            while (true) {
+                byte type = in.readByte();
+                switch (type) {
+                    case GradingWorker.NEED_PROBLEM:
+                        byte[] data;
+                        try {
+                            data = problem.get();
+                        } catch (Exception e) {
+                            throw new ExecutionException(e);
+                        }
+                        GradingWorker.writeBytes(out, data);
+                        break;
+                    case GradingWorker.FINGERPRINT:
+                        String fingerprint = in.readUTF();
+                        Double grade;
+                        try {
+                            grade = known.get(fingerprint);
+                        } catch (Exception e) {
+                            throw new ExecutionException(e);
+                        }
+                        if (grade == null)
+                            out.writeByte(GradingWorker.UNKNOWN);
+                        else {
+                            out.writeByte(GradingWorker.KNOWN);
+                            out.writeDouble(grade);
+                        }
+                        break;
+                    case GradingWorker.RESULT:
+                        boolean matches = in.readBoolean();
+                        String fp = in.readBoolean() ? in.readUTF() : null;
+                        return new GradeOutcome(matches, fp, in.readDouble(), in.readBoolean());
+                    case GradingWorker.ERROR:
+                        throw new ArisException(in.readUTF());
+                    default:
+                        throw new IOException("Unexpected message " + type + " from grading worker");
+                }
+                out.flush();
+            }
+        }
+
+        private void kill() {
+            process.destroyForcibly();
+        }
+
+    }
+
+}
@@ -2,11 +2,18 @@ package edu.rpi.aris.assign.server;
 
 import edu.rpi.aris.assign.ServerCallbacks;
 
+import java.time.ZonedDateTime;
+
 public class LibAssignCallbacks extends ServerCallbacks {
 
     @Override
-    public void scheduleForGrading(int submissionId) {
-        Grader.getInstance().addToGradeQueue(submissionId);
+    public void scheduleForGrading(int submissionId, int classId, int userId, ZonedDateTime dueDate) {
+        Grader.getInstance().addToGradeQueue(submissionId, classId, userId, dueDate);
+    }
+
+    @Override
+    public int getGradingBacklog() {
+        return Grader.getInstance().getBacklog();
     }
 
     @Override
@@ -14,4 +21,9 @@ public class LibAssignCallbacks extends ServerCallbacks {
         return AssignServerMain.getServer().getConfig().getMaxSubmissionSize();
     }
 
+    @Override
+    public void problemModified(int problemId) {
+        Grader.getInstance().invalidateProblem(problemId);
+    }
+
 }
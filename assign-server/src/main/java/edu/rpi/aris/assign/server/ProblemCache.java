@@ -0,0 +1,95 @@
+package edu.rpi.aris.assign.server;
+
+import edu.rpi.aris.assign.Problem;
+import edu.rpi.aris.assign.spi.ArisModule;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded, least recently used cache of parsed problems used by the {@link Grader} so a problem is parsed once
+ * rather than once per submission. Entries are keyed by the problem id and the hash of the blob the problem was
+ * parsed from, so an entry can never be used for a different version of the problem even if an edit races with a
+ * grade. Cached problems are shared between grading threads and must only be read. They are never closed by the
+ * cache since a grading thread may still be using an evicted problem, so any resources they hold are released by the
+ * garbage collector
+ */
+class ProblemCache {
+
+    private final LinkedHashMap<Integer, CachedProblem> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ProblemCache(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The cache size must be greater than 0");
+        cache = new LinkedHashMap<Integer, CachedProblem>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedProblem> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached problem if it was parsed from the given blob
+     *
+     * @param pid      the id of the problem
+     * @param blobHash the hash of the blob the problem is currently stored in
+     * @return the cached problem or null if it has not been parsed or was parsed from a different blob
+     */
+    @SuppressWarnings("unchecked")
+    <T extends ArisModule> Problem<T> get(int pid, String blobHash) {
+        CachedProblem cached;
+        synchronized (cache) {
+            cached = cache.get(pid);
+        }
+        if (cached == null || !cached.blobHash.equals(blobHash)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (Problem<T>) cached.problem;
+    }
+
+    void put(int pid, String blobHash, Problem<?> problem) {
+        synchronized (cache) {
+            cache.put(pid, new CachedProblem(blobHash, problem));
+        }
+    }
+
+    /**
+     * Removes the problem from the cache. Called when a problem is edited or deleted so the old version does not take
+     * up space until it is evicted
+     */
+    void invalidate(int pid) {
+        synchronized (cache) {
+            cache.remove(pid);
+        }
+    }
+
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ProblemCache[size=" + size() + ", hits=" + hits.get() + ", misses=" + misses.get() + "]";
+    }
+
+    private static class CachedProblem {
+
+        private final String blobHash;
+        private final Problem<?> problem;
+
+        private CachedProblem(String blobHash, Problem<?> problem) {
+            this.blobHash = blobHash;
+            this.problem = problem;
+        }
+
+    }
+
+}
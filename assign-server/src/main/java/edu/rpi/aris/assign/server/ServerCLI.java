@@ -9,6 +9,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.sql.SQLException;
@@ -73,6 +74,23 @@ public class ServerCLI {
                     case "rmuser":
                         log.error("rmuser not implemented");
                         break;
+                    case "export":
+                        if (args.size() != 3)
+                            log.error("Usage: export <class id> <assignment id> <file>");
+                        else {
+                            try {
+                                int count = AssignServerMain.getServer().getDbManager().exportAssignment(Integer.parseInt(args.get(0)), Integer.parseInt(args.get(1)), new File(args.get(2)));
+                                if (count < 0)
+                                    log.error("Assignment not found");
+                                else
+                                    log.info("Exported " + count + " submissions to " + args.get(2));
+                            } catch (NumberFormatException e) {
+                                log.error("Usage: export <class id> <assignment id> <file>");
+                            } catch (SQLException | IOException e) {
+                                LibAssign.getInstance().showExceptionError(Thread.currentThread(), e, false);
+                            }
+                        }
+                        break;
                     case "rlperm":
                         log.info("Reloading permissions from database...");
                         try {
@@ -132,6 +150,8 @@ public class ServerCLI {
             log.log(lvl, "\tuserlist           - lists the users for this server");
             log.log(lvl, "\trmuser <username>  - deletes the given user from the server");
             log.log(lvl, "\trlperm             - reloads the permissions from the database");
+            log.log(lvl, "\texport <class id> <assignment id> <file>");
+            log.log(lvl, "\t                   - writes an assignment's problems and submissions to an archive");
         }
     }
 
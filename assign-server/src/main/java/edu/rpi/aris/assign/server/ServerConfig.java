@@ -21,6 +21,11 @@ public class ServerConfig {
     private static final String DOMAIN_KEY = "domain";
     private static final String GRADE_THREADS = "grade-threads";
     private static final String MAX_SUB_SIZE = "max-sub-size";
+    private static final String PROBLEM_CACHE_SIZE = "problem-cache-size";
+    private static final String GRADE_QUEUE_SIZE = "grade-queue-size";
+    private static final String GRADE_WORKERS = "grade-workers";
+    private static final String GRADE_TIMEOUT = "grade-timeout";
+    private static final String GRADE_WORKER_HEAP = "grade-worker-heap";
     private static final String DATABASE_NAME_CONFIG = "db-name";
     private static final String DATABASE_USER_CONFIG = "db-user";
     private static final String DATABASE_PASS_CONFIG = "db-pass";
@@ -32,7 +37,8 @@ public class ServerConfig {
     private File configFile = new File(System.getProperty("user.home"), "aris.cfg");
     private File storageDir, logDir, caFile, keyFile;
     private String dbHost, dbName, dbUser, dbPass, domain;
-    private int dbPort, gradeThreads;
+    private int dbPort, gradeThreads, problemCacheSize, gradeQueueSize, gradeTimeout, gradeWorkerHeap;
+    private boolean gradeWorkers;
     private long maxSubmissionSize;
     private HashMap<String, String> configOptions = new HashMap<>();
 
@@ -116,6 +122,23 @@ public class ServerConfig {
         }
         gradeThreads = getIntConfigOption(GRADE_THREADS, 3, true);
         maxSubmissionSize = getIntConfigOption(MAX_SUB_SIZE, 5242880 /*5 MiB*/, true);
+        problemCacheSize = getIntConfigOption(PROBLEM_CACHE_SIZE, 256, true);
+        if (problemCacheSize <= 0) {
+            logger.fatal("Invalid problem cache size: " + problemCacheSize);
+            System.exit(1);
+        }
+        gradeQueueSize = getIntConfigOption(GRADE_QUEUE_SIZE, 10000, true);
+        if (gradeQueueSize <= 0) {
+            logger.fatal("Invalid grade queue size: " + gradeQueueSize);
+            System.exit(1);
+        }
+        gradeWorkers = Boolean.parseBoolean(getConfigOption(GRADE_WORKERS, "false", true));
+        gradeTimeout = getIntConfigOption(GRADE_TIMEOUT, 60, true);
+        gradeWorkerHeap = getIntConfigOption(GRADE_WORKER_HEAP, 512, true);
+        if (gradeTimeout <= 0 || gradeWorkerHeap <= 0) {
+            logger.fatal("Invalid grade worker limits: " + gradeTimeout + " seconds " + gradeWorkerHeap + " MiB");
+            System.exit(1);
+        }
         if (configOptions.size() > 0)
             logger.error("Unknown configuration options: " + StringUtils.join(configOptions.keySet(), ", "));
     }
@@ -195,4 +218,33 @@ public class ServerConfig {
     public long getMaxSubmissionSize() {
         return maxSubmissionSize;
     }
+
+    public int getProblemCacheSize() {
+        return problemCacheSize;
+    }
+
+    public int getGradeQueueSize() {
+        return gradeQueueSize;
+    }
+
+    /**
+     * @return true if submissions are graded in separate worker processes
+     */
+    public boolean useGradeWorkers() {
+        return gradeWorkers;
+    }
+
+    /**
+     * @return the longest a grading worker may spend on one submission in seconds
+     */
+    public int getGradeTimeout() {
+        return gradeTimeout;
+    }
+
+    /**
+     * @return the maximum heap of a grading worker in MiB
+     */
+    public int getGradeWorkerHeap() {
+        return gradeWorkerHeap;
+    }
 }
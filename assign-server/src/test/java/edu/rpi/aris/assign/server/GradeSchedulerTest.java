@@ -0,0 +1,147 @@
+package edu.rpi.aris.assign.server;
+
+import org.junit.Test;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class GradeSchedulerTest {
+
+    @Test
+    public void alternatesBetweenClasses() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(16);
+        for (int i = 1; i <= 6; ++i)
+            assertTrue(scheduler.add(i, 1, 1, null));
+        scheduler.add(101, 2, 2, null);
+        scheduler.add(102, 2, 2, null);
+        assertEquals(Arrays.asList(1, 101, 2, 102, 3, 4, 5, 6), scheduler.take(8, 1));
+    }
+
+    @Test
+    public void alternatesBetweenUsersInAClass() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(16);
+        scheduler.add(1, 1, 1, null);
+        scheduler.add(2, 1, 1, null);
+        scheduler.add(3, 1, 1, null);
+        scheduler.add(4, 1, 2, null);
+        assertEquals(Arrays.asList(1, 4, 2, 3), scheduler.take(4, 1));
+    }
+
+    @Test
+    public void ordersUserSubmissionsByDueDate() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(16);
+        ZonedDateTime now = ZonedDateTime.now();
+        scheduler.add(1, 1, 1, now.plusDays(3));
+        scheduler.add(2, 1, 1, null);
+        scheduler.add(3, 1, 1, now.plusDays(1));
+        assertEquals(Arrays.asList(3, 1, 2), scheduler.take(3, 1));
+    }
+
+    @Test
+    public void weightsClassesWithAnUpcomingDeadline() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(16);
+        ZonedDateTime now = ZonedDateTime.now();
+        for (int i = 1; i <= 6; ++i) {
+            scheduler.add(i, 1, i, now.plusHours(1));
+            scheduler.add(100 + i, 2, 100 + i, now.plusDays(1));
+        }
+        assertEquals(4, GradeScheduler.URGENT_WEIGHT);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 101, 5, 6, 102, 103, 104), scheduler.take(10, 1));
+    }
+
+    @Test
+    public void passedDeadlinesAreNotUrgent() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(16);
+        ZonedDateTime now = ZonedDateTime.now();
+        for (int i = 1; i <= 3; ++i) {
+            scheduler.add(i, 1, i, now.minusHours(1));
+            scheduler.add(100 + i, 2, 100 + i, null);
+        }
+        assertEquals(Arrays.asList(1, 101, 2, 102, 3, 103), scheduler.take(6, 1));
+    }
+
+    @Test
+    public void queuesEachSubmissionOnce() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(16);
+        assertTrue(scheduler.add(1, 1, 1, null));
+        assertTrue(scheduler.add(1, 1, 1, null));
+        assertEquals(1, scheduler.getBacklog());
+        assertEquals(Collections.singletonList(1), scheduler.take(16, 1));
+        // still being graded
+        assertTrue(scheduler.add(1, 1, 1, null));
+        assertEquals(0, scheduler.getBacklog());
+        assertArrayEquals(new Integer[]{1}, scheduler.getInFlight());
+        scheduler.finished(Collections.singletonList(1));
+        assertEquals(0, scheduler.getInFlight().length);
+        assertTrue(scheduler.add(1, 1, 1, null));
+        assertEquals(1, scheduler.getBacklog());
+    }
+
+    @Test
+    public void refillsOnceDrainedToHalf() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(4);
+        for (int i = 1; i <= 4; ++i)
+            assertTrue(scheduler.add(i, 1, 1, null));
+        assertFalse(scheduler.add(5, 1, 1, null));
+        assertFalse(scheduler.add(6, 1, 1, null));
+        assertEquals(6, scheduler.getBacklog());
+        assertEquals(0, scheduler.remainingCapacity());
+        assertFalse(scheduler.needsRefill());
+        scheduler.take(1, 1);
+        assertFalse(scheduler.needsRefill());
+        scheduler.take(1, 1);
+        assertTrue(scheduler.needsRefill());
+        assertFalse(scheduler.needsRefill());
+        assertEquals(2, scheduler.remainingCapacity());
+        assertTrue(scheduler.add(5, 1, 1, null));
+        assertTrue(scheduler.add(6, 1, 1, null));
+        scheduler.take(4, 1);
+        assertFalse(scheduler.needsRefill());
+    }
+
+    @Test
+    public void noRefillWithoutOverflow() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(4);
+        for (int i = 1; i <= 4; ++i)
+            scheduler.add(i, 1, 1, null);
+        scheduler.take(4, 1);
+        assertFalse(scheduler.needsRefill());
+    }
+
+    @Test
+    public void splitsQueueBetweenThreads() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(16);
+        for (int i = 1; i <= 8; ++i)
+            scheduler.add(i, i, i, null);
+        // each take is limited to its share of what is left, rounded up
+        assertEquals(Arrays.asList(1, 2), scheduler.take(64, 4));
+        assertEquals(Arrays.asList(3, 4), scheduler.take(64, 4));
+        assertEquals(Collections.singletonList(5), scheduler.take(64, 4));
+        assertEquals(Collections.singletonList(6), scheduler.take(64, 4));
+        assertEquals(Collections.singletonList(7), scheduler.take(64, 4));
+        assertEquals(Collections.singletonList(8), scheduler.take(64, 4));
+        for (int i = 1; i <= 16; ++i)
+            scheduler.add(100 + i, i, i, null);
+        // and never more than the maximum batch size
+        assertEquals(3, scheduler.take(3, 2).size());
+    }
+
+    @Test(timeout = 5000)
+    public void takeWaitsForSubmissions() throws InterruptedException {
+        GradeScheduler scheduler = new GradeScheduler(4);
+        Thread t = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            scheduler.add(1, 1, 1, null);
+        });
+        t.start();
+        assertEquals(Collections.singletonList(1), scheduler.take(4, 1));
+        t.join();
+    }
+
+}
@@ -0,0 +1,45 @@
+package edu.rpi.aris.bench;
+
+import edu.rpi.aris.ast.ASTConstructor;
+import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.ast.ParseCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing a sentence through the native library with the java parser and with a {@link ParseCache} hit
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+
+    @Param({"A",
+            "(A & B) -> C",
+            "forall x, (P(x) -> (Q(x) | ~R(x, y)))",
+            "((A & B & C) -> (D | E | F)) <-> (~(A & B & C) | (D | E | F) | (exists z, (S(z, a, b) & ~T(z))))"})
+    public String sentence;
+
+    @Setup
+    public void setup() {
+        if (ParseCache.parse(sentence) == null)
+            throw new IllegalStateException("Failed to parse benchmark sentence: " + sentence);
+    }
+
+    @Benchmark
+    public Expression rust() {
+        return Expression.parseViaRust(sentence);
+    }
+
+    @Benchmark
+    public Expression java() {
+        return ASTConstructor.parse(sentence);
+    }
+
+    @Benchmark
+    public Expression cached() {
+        return ParseCache.parse(sentence);
+    }
+
+}
@@ -0,0 +1,49 @@
+package edu.rpi.aris.bench;
+
+import edu.rpi.aris.proof.Proof;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Proof#verifyProof(ForkJoinPool)} on the proofs built by {@link SyntheticProofs}, both on the calling
+ * thread and on the common pool as the grading server does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProofBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int lines;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Proof proof;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        proof = SyntheticProofs.build(lines);
+    }
+
+    // verification results are cached on the proof so they have to be cleared before every call. Level.Invocation
+    // adds some overhead of its own but the smallest proof still takes far longer to verify than a timestamp
+    @Setup(Level.Invocation)
+    public void reset() {
+        proof.resetProofStatus();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        proof.close();
+    }
+
+    @Benchmark
+    public ArrayList<Proof.Status> verifyProof() {
+        return proof.verifyProof(parallel ? ForkJoinPool.commonPool() : null);
+    }
+
+}
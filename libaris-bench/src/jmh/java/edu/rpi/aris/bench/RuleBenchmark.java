@@ -0,0 +1,52 @@
+package edu.rpi.aris.bench;
+
+import edu.rpi.aris.ast.ParseCache;
+import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.proof.Premise;
+import edu.rpi.aris.rules.Rule;
+import edu.rpi.aris.rules.RuleList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Rule#verifyClaim(Expression, Premise[])} for every rule in {@link RuleList}. Each rule is given a
+ * claim with as many premises and subproofs as it requires; whether the claim is valid does not matter since the rule
+ * has to do the same matching to find out
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RuleBenchmark {
+
+    private static final String[] PREMISES = {"A -> B", "A", "~B", "A | B", "B -> C", "forall x, P(x)"};
+
+    // no values means every RuleList entry is benchmarked
+    @Param
+    public RuleList rule;
+
+    private Expression conclusion;
+    private Premise[] premises;
+
+    @Setup
+    public void setup() {
+        Rule r = rule.rule;
+        conclusion = ParseCache.parse("(A & B) -> C");
+        int subproofs = r.subProofPremises();
+        int required = Math.max(r.requiredPremises(), subproofs);
+        premises = new Premise[required];
+        for (int i = 0; i < required; ++i) {
+            Expression e = ParseCache.parse(PREMISES[i % PREMISES.length]);
+            if (i < subproofs)
+                premises[i] = new Premise(e, new Expression[]{ParseCache.parse("B"), conclusion});
+            else
+                premises[i] = new Premise(e);
+        }
+    }
+
+    @Benchmark
+    public String verifyClaim() {
+        return rule.rule.verifyClaim(conclusion, premises);
+    }
+
+}
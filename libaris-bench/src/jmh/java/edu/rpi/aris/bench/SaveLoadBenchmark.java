@@ -0,0 +1,66 @@
+package edu.rpi.aris.bench;
+
+import edu.rpi.aris.proof.Proof;
+import edu.rpi.aris.proof.SaveInfoListener;
+import edu.rpi.aris.proof.SaveManager;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.transform.TransformerException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving and loading the proofs built by {@link SyntheticProofs} with {@link SaveManager}, including the
+ * integrity hash
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SaveLoadBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int lines;
+
+    private SaveManager saveManager;
+    private Proof proof;
+    private byte[] saved;
+
+    @Setup(Level.Trial)
+    public void setup() throws TransformerException {
+        saveManager = new SaveManager(new SaveInfoListener() {
+            @Override
+            public boolean notArisFile(String filename, String programName, String programVersion) {
+                return false;
+            }
+
+            @Override
+            public void integrityCheckFailed(String filename) {
+                throw new IllegalStateException("Integrity check failed for benchmark proof");
+            }
+        });
+        proof = SyntheticProofs.build(lines);
+        saved = save();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        proof.close();
+    }
+
+    @Benchmark
+    public byte[] save() throws TransformerException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(saved == null ? 1024 : saved.length);
+        saveManager.saveProof(proof, out, true);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Proof load() throws IOException {
+        try (Proof p = saveManager.loadProblem(new ByteArrayInputStream(saved), true).getProof()) {
+            return p;
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package edu.rpi.aris.bench;
+
+import edu.rpi.aris.proof.Goal;
+import edu.rpi.aris.proof.Line;
+import edu.rpi.aris.proof.Proof;
+import edu.rpi.aris.proof.ValidationScheduler;
+import edu.rpi.aris.rules.RuleList;
+
+/**
+ * Builds proofs of a given size for the benchmarks. After a single premise "A" the proof is made of blocks of
+ * {@value #BLOCK_SIZE} lines, each holding a subproof nested in another subproof:
+ * <pre>
+ * A
+ * | Bk
+ * | | Ck
+ * | | A &amp; Ck                 conjunction of A and Ck
+ * | Ck -&gt; (A &amp; Ck)           conditional proof
+ * Bk -&gt; (Ck -&gt; (A &amp; Ck))     conditional proof
+ * </pre>
+ * The last line of every block is a goal so verifying the proof visits every line. Lines that do not fill a whole
+ * block are reiterations of the premise
+ */
+class SyntheticProofs {
+
+    static final int BLOCK_SIZE = 5;
+
+    private SyntheticProofs() {
+    }
+
+    static Proof build(int size) {
+        Proof proof = new Proof("bench");
+        Line premise = proof.addPremise();
+        premise.setExpressionString("A");
+        for (int block = 0; proof.getNumLines() + BLOCK_SIZE <= size; ++block) {
+            String b = "B" + block;
+            String c = "C" + block;
+            Line outer = addLine(proof, true, 1, b, null);
+            Line inner = addLine(proof, true, 2, c, null);
+            addLine(proof, false, 2, "A & " + c, RuleList.CONJUNCTION, premise, inner);
+            addLine(proof, false, 1, c + " -> (A & " + c + ")", RuleList.CONDITIONAL_PROOF, inner);
+            Line top = addLine(proof, false, 0, b + " -> (" + c + " -> (A & " + c + "))", RuleList.CONDITIONAL_PROOF, outer);
+            Goal goal = proof.addGoal(proof.getNumGoals());
+            goal.setGoalString(top.getExpressionString());
+        }
+        while (proof.getNumLines() < size)
+            addLine(proof, false, 0, "A", RuleList.REITERATION, premise);
+        // run the edit time validation now so it does not overlap with the measurements
+        ValidationScheduler.getInstance().flush();
+        proof.resetProofStatus();
+        return proof;
+    }
+
+    private static Line addLine(Proof proof, boolean isAssumption, int level, String expression, RuleList rule, Line... premises) {
+        Line line = proof.addLine(proof.getNumLines(), isAssumption, level);
+        line.setExpressionString(expression);
+        for (Line p : premises)
+            proof.setPremise(line.getLineNum(), p, true);
+        if (rule != null)
+            line.setSelectedRule(rule);
+        return line;
+    }
+
+}
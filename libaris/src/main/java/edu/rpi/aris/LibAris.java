@@ -42,6 +42,8 @@ public class LibAris implements ArisModule<LibAris> {
     private boolean loadedClient = false;
     private boolean loadedServer = false;
     private HashMap<String, String> assignProperties = new HashMap<>();
+    private SaveManager problemConverter = null;
+    private SaveInfoListener problemConverterListener = null;
 
     public LibAris() {
         instance = this;
@@ -97,8 +99,14 @@ public class LibAris implements ArisModule<LibAris> {
 
     @NotNull
     @Override
-    public ProblemConverter<LibAris> getProblemConverter() {
-        return new SaveManager((SaveInfoListener) (clientModule == null ? serverModule : clientModule));
+    public synchronized ProblemConverter<LibAris> getProblemConverter() {
+        // SaveManager is stateless so a single instance is shared until the module it reports to changes
+        SaveInfoListener listener = (SaveInfoListener) (clientModule == null ? serverModule : clientModule);
+        if (problemConverter == null || problemConverterListener != listener) {
+            problemConverter = new SaveManager(listener);
+            problemConverterListener = listener;
+        }
+        return problemConverter;
     }
 
     @Override
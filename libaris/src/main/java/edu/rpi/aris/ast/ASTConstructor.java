@@ -1,43 +1,124 @@
 package edu.rpi.aris.ast;
 
 import edu.rpi.aris.ast.Expression.*;
+import edu.rpi.aris.proof.ExpressionParseException;
 import java.util.*;
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.*;
 
+/**
+ * Builds {@link Expression} trees from the ANTLR ParseExpression grammar without going through the native library.
+ * Each thread reuses its own lexer, parser and visitor. Parsing is attempted with SLL prediction first and only
+ * retried with full LL prediction if that fails, and errors are reported as an {@link ExpressionParseException} with
+ * the offset and length of the offending input instead of being printed
+ */
 public class ASTConstructor extends ParseExpressionBaseVisitor<Expression> implements ParseExpressionVisitor<Expression> {
+
+    private static final ThreadLocal<ParserInstance> parsers = ThreadLocal.withInitial(ParserInstance::new);
+
+    /**
+     * Parses the given sentence
+     *
+     * @param s the sentence to parse
+     * @return the parsed expression or null if the sentence could not be parsed
+     */
     public static Expression parse(String s) {
-        ASTConstructor x = new ASTConstructor();
-        CharStream cs = new ANTLRInputStream(s);
-        Lexer lex = new ParseExpressionLexer(cs);
-        ParseExpressionParser yacc = new ParseExpressionParser(new BufferedTokenStream(lex));
-        yacc.setErrorHandler(new BailErrorStrategy());
-        yacc.setBuildParseTree(true);
         try {
-            try {
-                return yacc.main().accept(x);
-            } catch(ParseCancellationException pce) {
-                //pce.printStackTrace();
-                System.out.printf("PCE: %s\n", pce.toString());
-                Throwable t = pce;
-                while(t != null) {
-                    System.out.printf("\t%s %s\n", t.toString(), t.getMessage());
-                    if(t instanceof RecognitionException) {
-                        throw (RecognitionException)t;
+            return parseOrThrow(s);
+        } catch (ExpressionParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses the given sentence
+     *
+     * @param s the sentence to parse
+     * @return the parsed expression
+     * @throws ExpressionParseException if the sentence could not be parsed. The offset and length of the exception
+     *                                  cover the input that caused the error when it is known
+     */
+    public static Expression parseOrThrow(String s) throws ExpressionParseException {
+        if (s == null)
+            throw new ExpressionParseException("No expression given", -1, 0);
+        return parsers.get().parse(s);
+    }
+
+    private static class ParserInstance extends BaseErrorListener {
 
-                    }
-                    t = t.getCause();
+        private final ParseExpressionLexer lexer = new ParseExpressionLexer(null);
+        private final ParseExpressionParser parser = new ParseExpressionParser(null);
+        private final ASTConstructor visitor = new ASTConstructor();
+        private ExpressionParseException lexerError;
+        private int length;
+
+        ParserInstance() {
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(this);
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+            parser.setBuildParseTree(true);
+        }
+
+        Expression parse(String s) throws ExpressionParseException {
+            lexerError = null;
+            length = s.length();
+            lexer.setInputStream(CharStreams.fromString(s));
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            parser.setTokenStream(tokens);
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            ParseExpressionParser.MainContext tree;
+            try {
+                try {
+                    tree = parser.main();
+                } catch (ParseCancellationException e) {
+                    // SLL can reject input that full LL accepts so only report an error once LL has failed as well
+                    tokens.seek(0);
+                    parser.reset();
+                    parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                    tree = parser.main();
                 }
-                return null;
+            } catch (ParseCancellationException e) {
+                if (lexerError != null)
+                    throw lexerError;
+                throw parseError(e);
+            } finally {
+                parser.setTokenStream(null);
             }
-        } catch(RecognitionException re) {
-            Token token = re.getOffendingToken();
-            System.out.printf("\t\tUnexpected token '%s' at %d-%d, (Expected: %s)\n", token.getText(), token.getStartIndex(), token.getStopIndex()+1, re.getExpectedTokens().toString(ParseExpressionParser.VOCABULARY));
-            return null;
+            if (lexerError != null)
+                throw lexerError;
+            visitor.pred_args = null;
+            Expression e = tree.accept(visitor);
+            if (e == null)
+                throw new ExpressionParseException("Parse Error", -1, 0);
+            return e;
         }
 
+        private ExpressionParseException parseError(ParseCancellationException pce) {
+            Throwable t = pce;
+            while (t != null && !(t instanceof RecognitionException))
+                t = t.getCause();
+            Token token = t == null ? null : ((RecognitionException) t).getOffendingToken();
+            if (token == null)
+                return new ExpressionParseException("Parse Error", -1, 0);
+            if (token.getType() == Token.EOF)
+                return new ExpressionParseException("Unexpected end of expression", Math.max(0, length - 1), length == 0 ? 0 : 1);
+            int start = token.getStartIndex();
+            int stop = token.getStopIndex();
+            return new ExpressionParseException("Unexpected \"" + token.getText() + "\"", start, Math.max(1, stop - start + 1));
+        }
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+            if (lexerError != null)
+                return;
+            int offset = e instanceof LexerNoViableAltException ? ((LexerNoViableAltException) e).getStartIndex() : -1;
+            lexerError = new ExpressionParseException("Unrecognized symbol", offset, offset < 0 ? 0 : 1);
+        }
     }
+
     ArrayList<Expression> pred_args = null;
 	//@Override public Expression visitMain(ParseExpressionParser.MainContext ctx) { return null; }
 	@Override public Expression visitPredicate(ParseExpressionParser.PredicateContext ctx) {
@@ -2,6 +2,7 @@ package edu.rpi.aris.ast;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class Expression {
     static { edu.rpi.aris.util.SharedObjectLoader.loadLib("libaris"); }
@@ -12,6 +13,38 @@ public class Expression {
 
     @Override public native boolean equals(Object e);
 
+    // set by ExpressionInterner on canonical nodes, see ExpressionInterner#equal
+    transient Object internToken = null;
+    private transient int hash = 0;
+
+    /**
+     * A structural hash consistent with {@link #equals(Object)}. It is computed on first use and cached, so an
+     * expression must not be modified once it has been hashed
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = getClass().getName().hashCode();
+            if (this instanceof VarExpression)
+                h = 31 * h + Objects.hashCode(((VarExpression) this).name);
+            else if (this instanceof ApplyExpression)
+                h = 31 * (31 * h + Objects.hashCode(((ApplyExpression) this).func)) + Objects.hashCode(((ApplyExpression) this).args);
+            else if (this instanceof UnaryExpression)
+                h = 31 * h + Objects.hashCode(((UnaryExpression) this).operand);
+            else if (this instanceof BinaryExpression)
+                h = 31 * (31 * h + Objects.hashCode(((BinaryExpression) this).l)) + Objects.hashCode(((BinaryExpression) this).r);
+            else if (this instanceof AssociativeBinopExpression)
+                h = 31 * h + Objects.hashCode(((AssociativeBinopExpression) this).exprs);
+            else if (this instanceof QuantifierExpression)
+                h = 31 * (31 * h + Objects.hashCode(((QuantifierExpression) this).boundvar)) + Objects.hashCode(((QuantifierExpression) this).body);
+            if (h == 0)
+                h = 1;
+            hash = h;
+        }
+        return h;
+    }
+
     public static class ContradictionExpression extends Expression {}
     public static class TautologyExpression extends Expression {}
 
@@ -0,0 +1,179 @@
+package edu.rpi.aris.ast;
+
+import edu.rpi.aris.ast.Expression.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash-conses {@link Expression} trees so that every structurally identical subtree is represented by a single shared
+ * node. Once interned two expressions are equal exactly when they are the same object, which lets them be compared and
+ * used as map keys without calling into the native {@link Expression#equals(Object)}.
+ * <p>
+ * The table is bounded. When it fills up it is dropped and a new generation is started; expressions interned in an
+ * older generation are still valid and {@link #equal(Expression, Expression)} falls back to a full comparison for them
+ */
+public class ExpressionInterner {
+
+    public static final int DEFAULT_MAX_SIZE = 1 << 16;
+    private static final ExpressionInterner instance = new ExpressionInterner(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+    private volatile Generation generation = new Generation();
+
+    ExpressionInterner(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The table size must be greater than 0");
+        this.maxSize = maxSize;
+    }
+
+    public static ExpressionInterner getInstance() {
+        return instance;
+    }
+
+    /**
+     * Shorthand for {@code ExpressionInterner.getInstance().intern(e)}
+     */
+    public static Expression canonical(Expression e) {
+        return instance.intern(e);
+    }
+
+    /**
+     * Compares two expressions, using reference equality when both were interned in the same generation
+     *
+     * @return true if the expressions are structurally equal
+     */
+    public static boolean equal(Expression e1, Expression e2) {
+        if (e1 == e2)
+            return true;
+        if (e1 == null || e2 == null)
+            return false;
+        if (e1.internToken != null && e1.internToken == e2.internToken)
+            return false;
+        return e1.equals(e2);
+    }
+
+    /**
+     * Returns the canonical node for the given expression. The children of the given tree are replaced with their
+     * canonical nodes as it is interned, so it must not be shared with code that expects it to stay unchanged
+     *
+     * @param e the expression to intern
+     * @return the canonical expression, or null if e is null
+     */
+    public Expression intern(Expression e) {
+        if (e == null)
+            return null;
+        Generation g = generation;
+        if (g.table.size() >= maxSize) {
+            synchronized (this) {
+                if (generation == g)
+                    generation = new Generation();
+                g = generation;
+            }
+        }
+        return intern(e, g);
+    }
+
+    public int size() {
+        return generation.table.size();
+    }
+
+    private Expression intern(Expression e, Generation g) {
+        if (e == null || e.internToken == g)
+            return e;
+        String label = null;
+        Expression[] children;
+        if (e instanceof VarExpression) {
+            label = ((VarExpression) e).name;
+            children = new Expression[0];
+        } else if (e instanceof ApplyExpression) {
+            ApplyExpression a = (ApplyExpression) e;
+            a.func = intern(a.func, g);
+            a.args = internAll(a.args, g);
+            children = new Expression[a.args.size() + 1];
+            children[0] = a.func;
+            for (int i = 0; i < a.args.size(); ++i)
+                children[i + 1] = a.args.get(i);
+        } else if (e instanceof UnaryExpression) {
+            UnaryExpression u = (UnaryExpression) e;
+            u.operand = intern(u.operand, g);
+            children = new Expression[]{u.operand};
+        } else if (e instanceof BinaryExpression) {
+            BinaryExpression b = (BinaryExpression) e;
+            b.l = intern(b.l, g);
+            b.r = intern(b.r, g);
+            children = new Expression[]{b.l, b.r};
+        } else if (e instanceof AssociativeBinopExpression) {
+            AssociativeBinopExpression a = (AssociativeBinopExpression) e;
+            a.exprs = internAll(a.exprs, g);
+            children = a.exprs.toArray(new Expression[0]);
+        } else if (e instanceof QuantifierExpression) {
+            QuantifierExpression q = (QuantifierExpression) e;
+            label = q.boundvar;
+            q.body = intern(q.body, g);
+            children = new Expression[]{q.body};
+        } else
+            children = new Expression[0];
+        Expression canonical = g.table.putIfAbsent(new Node(e.getClass(), label, children), e);
+        if (canonical == null) {
+            e.internToken = g;
+            canonical = e;
+        }
+        return canonical;
+    }
+
+    private ArrayList<Expression> internAll(List<Expression> list, Generation g) {
+        ArrayList<Expression> interned = new ArrayList<>(list == null ? 0 : list.size());
+        if (list != null)
+            for (Expression e : list)
+                interned.add(intern(e, g));
+        return interned;
+    }
+
+    private static class Generation {
+        private final ConcurrentHashMap<Node, Expression> table = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The shallow identity of a node: its type, its name or bound variable and its already canonical children, which
+     * are compared by reference
+     */
+    private static class Node {
+
+        private final Class<?> type;
+        private final String label;
+        private final Expression[] children;
+        private final int hash;
+
+        Node(Class<?> type, String label, Expression[] children) {
+            this.type = type;
+            this.label = label;
+            this.children = children;
+            int h = 31 * type.hashCode() + Objects.hashCode(label);
+            for (Expression c : children)
+                h = 31 * h + System.identityHashCode(c);
+            hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Node))
+                return false;
+            Node n = (Node) obj;
+            if (type != n.type || !Objects.equals(label, n.label) || children.length != n.children.length)
+                return false;
+            for (int i = 0; i < children.length; ++i)
+                if (children[i] != n.children[i])
+                    return false;
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package edu.rpi.aris.ast;
+
+import edu.rpi.aris.proof.ExpressionParseException;
+import edu.rpi.aris.util.SharedObjectLoader;
+
+/**
+ * A parser turning sentences into {@link Expression}s. {@link #RUST} parses through the native library and
+ * {@link #JAVA} parses with {@link ASTConstructor}, which works when the native library is not available
+ */
+@FunctionalInterface
+public interface ExpressionParser {
+
+    String PARSER_PROPERTY = "aris.parser";
+
+    ExpressionParser RUST = s -> {
+        Expression e = Expression.parseViaRust(s);
+        if (e == null)
+            throw new ExpressionParseException("Parse Error", -1, 0);
+        return e;
+    };
+
+    ExpressionParser JAVA = ASTConstructor::parseOrThrow;
+
+    /**
+     * Returns the parser selected by the {@value #PARSER_PROPERTY} system property ("rust" or "java"). If the property
+     * is not set the native parser is used when the native library could be loaded and the java parser otherwise
+     *
+     * @return the default parser
+     */
+    static ExpressionParser getDefault() {
+        String parser = System.getProperty(PARSER_PROPERTY, "");
+        if (parser.equalsIgnoreCase("java"))
+            return JAVA;
+        if (parser.equalsIgnoreCase("rust"))
+            return RUST;
+        SharedObjectLoader.loadLib("libaris");
+        return SharedObjectLoader.isLoaded("libaris") ? RUST : JAVA;
+    }
+
+    /**
+     * Parses the given sentence
+     *
+     * @param sentence the sentence to parse
+     * @return the parsed expression
+     * @throws ExpressionParseException if the sentence could not be parsed
+     */
+    Expression parse(String sentence) throws ExpressionParseException;
+
+}
@@ -0,0 +1,170 @@
+package edu.rpi.aris.ast;
+
+import edu.rpi.aris.proof.ExpressionParseException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process wide, size bounded, least recently used cache from sentence strings to their parsed {@link Expression}.
+ * Failed parses are cached along with their error so an invalid sentence is not sent back through the parser every
+ * time it is checked. Sentences are parsed with {@link ExpressionParser#getDefault()} unless another parser is set.
+ * The cached expressions are interned through {@link ExpressionInterner}, are shared between every caller and must
+ * not be modified
+ */
+public class ParseCache {
+
+    public static final int DEFAULT_MAX_SIZE = 8192;
+    private static final ParseCache instance = new ParseCache(DEFAULT_MAX_SIZE, ExpressionParser.getDefault());
+
+    // values are either the parsed Expression or the ExpressionParseException thrown while parsing
+    private final LinkedHashMap<String, Object> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile int maxSize;
+    private volatile ExpressionParser parser;
+
+    ParseCache(int maxSize, ExpressionParser parser) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The cache size must be greater than 0");
+        this.maxSize = maxSize;
+        this.parser = parser;
+        cache = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                return size() > ParseCache.this.maxSize;
+            }
+        };
+    }
+
+    public static ParseCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Shorthand for {@code ParseCache.getInstance().get(sentence)}
+     */
+    public static Expression parse(String sentence) {
+        return instance.get(sentence);
+    }
+
+    /**
+     * Shorthand for {@code ParseCache.getInstance().getOrThrow(sentence)}
+     */
+    public static Expression parseOrThrow(String sentence) throws ExpressionParseException {
+        return instance.getOrThrow(sentence);
+    }
+
+    /**
+     * Returns the parsed expression for the given sentence, parsing it only if it is not already cached
+     *
+     * @param sentence the sentence to parse
+     * @return the parsed expression or null if the sentence could not be parsed
+     */
+    public Expression get(String sentence) {
+        try {
+            return getOrThrow(sentence);
+        } catch (ExpressionParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the parsed expression for the given sentence, parsing it only if it is not already cached
+     *
+     * @param sentence the sentence to parse
+     * @return the parsed expression
+     * @throws ExpressionParseException if the sentence could not be parsed
+     */
+    public Expression getOrThrow(String sentence) throws ExpressionParseException {
+        if (sentence == null)
+            throw new ExpressionParseException("No expression given", -1, 0);
+        Object result;
+        synchronized (cache) {
+            result = cache.get(sentence);
+        }
+        if (result != null)
+            hits.incrementAndGet();
+        else {
+            misses.incrementAndGet();
+            // parse outside of the lock so a slow parse does not block other lookups
+            try {
+                Expression e = parser.parse(sentence);
+                result = e == null ? new ExpressionParseException("Parse Error", -1, 0) : ExpressionInterner.canonical(e);
+            } catch (ExpressionParseException e) {
+                result = e;
+            }
+            synchronized (cache) {
+                cache.put(sentence, result);
+            }
+        }
+        if (result instanceof ExpressionParseException) {
+            ExpressionParseException e = (ExpressionParseException) result;
+            throw new ExpressionParseException(e.getMessage(), e.getErrorOffset(), e.getErrorLength());
+        }
+        return (Expression) result;
+    }
+
+    /**
+     * Sets the parser used for sentences that are not cached yet and clears the cache
+     *
+     * @param parser the parser to use
+     */
+    public void setParser(ExpressionParser parser) {
+        this.parser = parser;
+        clear();
+    }
+
+    public ExpressionParser getParser() {
+        return parser;
+    }
+
+    public void setMaxSize(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The cache size must be greater than 0");
+        this.maxSize = maxSize;
+        synchronized (cache) {
+            while (cache.size() > maxSize)
+                cache.remove(cache.keySet().iterator().next());
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : h / (double) total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ParseCache[size=%d/%d, hits=%d, misses=%d, hitRate=%.3f]", size(), maxSize, getHits(), getMisses(), getHitRate());
+    }
+
+}
@@ -3,15 +3,57 @@ package edu.rpi.aris.proof;
 import edu.rpi.aris.LibAris;
 import edu.rpi.aris.assign.Problem;
 
+import java.util.function.Supplier;
+
 public class ArisProofProblem implements Problem<LibAris> {
 
     private Proof proof;
+    private ProofOutline outline;
+    private Supplier<Proof> loader;
 
     public ArisProofProblem(Proof proof) {
         this.proof = proof;
     }
 
-    public Proof getProof() {
+    /**
+     * Creates a problem whose proof is only built the first time {@link #getProof()} is called
+     *
+     * @param outline the outline read from the saved proof
+     * @param loader  builds the proof
+     */
+    ArisProofProblem(ProofOutline outline, Supplier<Proof> loader) {
+        this.outline = outline;
+        this.loader = loader;
+    }
+
+    public synchronized Proof getProof() {
+        if (loader != null) {
+            proof = loader.get();
+            loader = null;
+        }
         return proof;
     }
+
+    /**
+     * Returns the premises, goals and rules of the proof without building the proof if it has not been built yet
+     */
+    public synchronized ProofOutline getOutline() {
+        if (loader != null)
+            return outline;
+        return proof == null ? null : ProofOutline.of(proof);
+    }
+
+    /**
+     * @return true if the proof has been built
+     */
+    public synchronized boolean isLoaded() {
+        return loader == null;
+    }
+
+    @Override
+    public synchronized void close() {
+        loader = null;
+        if (proof != null)
+            proof.close();
+    }
 }
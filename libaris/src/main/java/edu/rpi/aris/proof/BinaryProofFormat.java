@@ -0,0 +1,238 @@
+package edu.rpi.aris.proof;
+
+import edu.rpi.aris.rules.RuleList;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * A compact binary encoding of a proof used for storage and transfer between the assign client and server. The .bram
+ * xml format remains the format for files and export.
+ * <p>
+ * Version 1 layout, where varint is an unsigned LEB128 integer and str is a varint index into the string table:
+ * <pre>
+ * magic (4 bytes) version (1 byte)
+ * string table:  varint count, then per string a varint byte length and its UTF-8 bytes
+ * authors:       varint count, str per author
+ * allowed rules: varint count, varint RuleList ordinal per rule
+ * lines:         varint count, then per line
+ *                  byte flags (1 = assumption), varint subproof level, str expression
+ *                  assumption: varint constants (str + 1, 0 for none)
+ *                  step:       varint rule (ordinal + 1, 0 for none), varint premise count,
+ *                              varint distance back from the line to each premise
+ * goals:         varint count, str per goal
+ * hash:          32 byte SHA-256 of everything above followed by the sorted authors
+ * </pre>
+ * RuleList ordinals are part of the format so new rules must only ever be added to the end of {@link RuleList}
+ */
+class BinaryProofFormat {
+
+    static final int VERSION = 1;
+    private static final byte[] MAGIC = {0, 'B', 'R', 'M'};
+    private static final int FLAG_ASSUMPTION = 1;
+    private static final int HASH_LENGTH = 32;
+    // guards against allocating huge arrays for corrupt input
+    private static final int MAX_COUNT = 1 << 24;
+
+    private BinaryProofFormat() {
+    }
+
+    /**
+     * @return true if the given stream starts with the binary format's magic bytes. The stream is not advanced
+     */
+    static boolean isBinary(PushbackInputStream in) throws IOException {
+        byte[] head = new byte[MAGIC.length];
+        int read = 0;
+        int r;
+        while (read < head.length && (r = in.read(head, read, head.length - read)) > 0)
+            read += r;
+        if (read > 0)
+            in.unread(head, 0, read);
+        return read == head.length && Arrays.equals(head, MAGIC);
+    }
+
+    static void write(Proof proof, OutputStream out, boolean saveAuthors, MessageDigest digest) throws IOException {
+        digest.reset();
+        DigestOutputStream digestOut = new DigestOutputStream(out, digest);
+        ArrayList<String> strings = new ArrayList<>();
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        ArrayList<String> authors = new ArrayList<>(proof.getAuthors());
+        Collections.sort(authors);
+        writeVarInt(body, saveAuthors ? authors.size() : 0);
+        if (saveAuthors)
+            for (String a : authors)
+                writeVarInt(body, stringId(a, strings, stringIds));
+        ArrayList<RuleList> rules = new ArrayList<>();
+        for (RuleList r : proof.getAllowedRules())
+            if (r != null)
+                rules.add(r);
+        writeVarInt(body, rules.size());
+        for (RuleList r : rules)
+            writeVarInt(body, r.ordinal());
+
+        writeVarInt(body, proof.getNumLines());
+        for (int i = 0; i < proof.getNumLines(); ++i) {
+            Line line = proof.getLine(i);
+            body.write(line.isAssumption() ? FLAG_ASSUMPTION : 0);
+            writeVarInt(body, line.getSubProofLevel());
+            writeVarInt(body, stringId(line.getExpressionString(), strings, stringIds));
+            if (line.isAssumption()) {
+                TreeSet<String> constants = line.getConstants();
+                writeVarInt(body, constants.isEmpty() ? 0 : stringId(String.join(",", constants), strings, stringIds) + 1);
+            } else {
+                writeVarInt(body, line.getSelectedRule() == null ? 0 : line.getSelectedRule().ordinal() + 1);
+                HashSet<Line> premises = line.getPremises();
+                int[] premiseLines = new int[premises.size()];
+                int j = 0;
+                for (Line p : premises)
+                    premiseLines[j++] = p.getLineNum();
+                Arrays.sort(premiseLines);
+                writeVarInt(body, premiseLines.length);
+                for (int p : premiseLines)
+                    writeVarInt(body, i - p);
+            }
+        }
+        writeVarInt(body, proof.getNumGoals());
+        for (int i = 0; i < proof.getNumGoals(); ++i)
+            writeVarInt(body, stringId(proof.getGoal(i).getGoalString(), strings, stringIds));
+
+        digestOut.write(MAGIC);
+        digestOut.write(VERSION);
+        writeVarInt(digestOut, strings.size());
+        for (String str : strings) {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(digestOut, bytes.length);
+            digestOut.write(bytes);
+        }
+        body.writeTo(digestOut);
+        digestOut.on(false);
+        digest.update(String.join("", saveAuthors ? authors : Collections.emptyList()).getBytes(StandardCharsets.UTF_8));
+        out.write(digest.digest());
+        out.flush();
+    }
+
+    /**
+     * Reads a proof written by {@link #write(Proof, OutputStream, boolean, MessageDigest)}
+     */
+    static Decoded read(InputStream in, MessageDigest digest) throws IOException {
+        digest.reset();
+        DigestInputStream digestIn = new DigestInputStream(in, digest);
+        DataInputStream data = new DataInputStream(digestIn);
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IOException("Invalid file format");
+        int version = data.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported binary proof version " + version);
+        int numStrings = readCount(data);
+        String[] strings = new String[numStrings];
+        for (int i = 0; i < numStrings; ++i) {
+            byte[] bytes = new byte[readCount(data)];
+            data.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        Decoded d = new Decoded();
+        int numAuthors = readCount(data);
+        for (int i = 0; i < numAuthors; ++i)
+            d.authors.add(string(strings, readVarInt(data)));
+        RuleList[] ruleList = RuleList.values();
+        int numRules = readCount(data);
+        for (int i = 0; i < numRules; ++i) {
+            int ordinal = readVarInt(data);
+            if (ordinal < ruleList.length)
+                d.allowedRules.add(ruleList[ordinal]);
+        }
+        int numLines = readCount(data);
+        for (int i = 0; i < numLines; ++i) {
+            int flags = data.readUnsignedByte();
+            LineRecord line = new LineRecord((flags & FLAG_ASSUMPTION) != 0, readVarInt(data));
+            line.raw = string(strings, readVarInt(data));
+            if (line.isAssumption) {
+                int constants = readVarInt(data);
+                if (constants > 0)
+                    line.constants = string(strings, constants - 1);
+            } else {
+                int rule = readVarInt(data);
+                if (rule > 0 && rule <= ruleList.length)
+                    line.rule = ruleList[rule - 1].name();
+                int numPremises = readCount(data);
+                for (int j = 0; j < numPremises; ++j)
+                    line.premises.add(i - readVarInt(data));
+            }
+            d.lines.add(line);
+        }
+        int numGoals = readCount(data);
+        for (int i = 0; i < numGoals; ++i)
+            d.goals.add(string(strings, readVarInt(data)));
+        digestIn.on(false);
+        ArrayList<String> authors = new ArrayList<>(d.authors);
+        Collections.sort(authors);
+        digest.update(String.join("", authors).getBytes(StandardCharsets.UTF_8));
+        byte[] hash = new byte[HASH_LENGTH];
+        data.readFully(hash);
+        d.hashValid = MessageDigest.isEqual(hash, digest.digest());
+        return d;
+    }
+
+    private static int stringId(String s, ArrayList<String> strings, HashMap<String, Integer> ids) {
+        if (s == null)
+            s = "";
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = strings.size();
+            strings.add(s);
+            ids.put(s, id);
+        }
+        return id;
+    }
+
+    private static String string(String[] strings, int id) throws IOException {
+        if (id < 0 || id >= strings.length)
+            throw new IOException("Invalid string index in binary proof");
+        return strings[id];
+    }
+
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint in binary proof");
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = readVarInt(in);
+        if (count < 0 || count > MAX_COUNT)
+            throw new IOException("Invalid length in binary proof");
+        return count;
+    }
+
+    static class Decoded {
+
+        final ArrayList<String> authors = new ArrayList<>();
+        final HashSet<RuleList> allowedRules = new HashSet<>();
+        final ArrayList<LineRecord> lines = new ArrayList<>();
+        final ArrayList<String> goals = new ArrayList<>();
+        boolean hashValid;
+
+    }
+
+}
@@ -0,0 +1,254 @@
+package edu.rpi.aris.proof;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Reads a .bram file from a pull parser into flat per line records without building a DOM. Proof elements are written
+ * one after another with each subproof in an element after the one it is referenced from, so the lines are collected
+ * by their linenum and only turned into a {@link Proof} once the whole file has been read. Line numbers and subproof
+ * ids come from the file, so they are kept in maps and checked for gaps at the end rather than used to size lists.
+ * <p>
+ * Reading stops early with {@link #isLegacyHash()} set if the metadata holds the hash, since that hash covers a
+ * re-serialized document and can only be checked by the DOM loader
+ */
+class BramStreamReader {
+
+    private final XMLStreamReader reader;
+    final ArrayList<LineRecord> lines = new ArrayList<>();
+    final ArrayList<String[]> goals = new ArrayList<>();
+    final ArrayList<String> authors = new ArrayList<>();
+    final ArrayList<String> allowedRules = new ArrayList<>();
+    // the subproof level and first line of each proof element by id, known once the step referencing it has been read
+    private final HashMap<Integer, int[]> proofElements = new HashMap<>();
+    // the lines read so far by linenum, copied to lines in order once every line has been read
+    private final HashMap<Integer, LineRecord> lineRecords = new HashMap<>();
+    String program, version, hash;
+    boolean hasMetadata = false;
+    private boolean legacyHash = false;
+    private int numProofs = 0;
+
+    BramStreamReader(XMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the document
+     *
+     * @param metadataRead called once the metadata has been read, before any proof element
+     */
+    void read(Runnable metadataRead) throws XMLStreamException, IOException {
+        if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("bram"))
+            throw new IOException("Invalid file format");
+        boolean metadataDone = false;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String tag = reader.getLocalName();
+            if (!metadataDone && tag.equals("proof")) {
+                metadataDone = true;
+                metadataRead.run();
+            }
+            switch (tag) {
+                case "program":
+                    program = reader.getElementText();
+                    break;
+                case "version":
+                    version = reader.getElementText();
+                    break;
+                case "metadata":
+                    hasMetadata = true;
+                    readMetadata();
+                    if (legacyHash)
+                        return;
+                    break;
+                case "proof":
+                    readProofElement();
+                    break;
+                case "hash":
+                    hash = reader.getElementText();
+                    break;
+                default:
+                    skipElement();
+            }
+        }
+        if (program == null || version == null)
+            throw new IOException("Invalid file format");
+        if (numProofs == 0)
+            throw new IOException("Missing main proof element");
+        for (int i = 0; i < lineRecords.size(); ++i) {
+            LineRecord line = lineRecords.get(i);
+            if (line == null)
+                throw new IOException("Non sequential linenum tags in file");
+            lines.add(line);
+        }
+        for (int sub : proofElements.keySet())
+            if (sub >= numProofs)
+                throw new IOException("Invalid proof id in subproof step");
+    }
+
+    boolean isLegacyHash() {
+        return legacyHash;
+    }
+
+    private void readMetadata() throws XMLStreamException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "author":
+                    authors.add(reader.getElementText());
+                    break;
+                case "allowed-rule":
+                    allowedRules.add(reader.getElementText());
+                    break;
+                case "hash":
+                    legacyHash = true;
+                    return;
+                default:
+                    skipElement();
+            }
+        }
+    }
+
+    private void readProofElement() throws XMLStreamException, IOException {
+        int id;
+        try {
+            id = Integer.parseInt(reader.getAttributeValue(null, "id"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid id tag in proof element");
+        }
+        if (id != numProofs++)
+            throw new IOException("Non sequential id tag found in proof element");
+        int indent, lineNum;
+        if (id == 0) {
+            indent = 0;
+            lineNum = 0;
+        } else {
+            int[] element = proofElements.get(id);
+            if (element == null)
+                throw new IOException("Invalid proof id in subproof step");
+            indent = element[0];
+            lineNum = element[1];
+        }
+        boolean stepRead = false;
+        int subproofStart = -1;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "assumption": {
+                    if (stepRead)
+                        throw new IOException("Non sequential linenum tags in file");
+                    int num = readLineNum("Invalid assumptions linenum tag");
+                    if (num != lineNum)
+                        throw new IOException("Non sequential linenum tags in file");
+                    LineRecord line = new LineRecord(true, indent);
+                    readLine(line);
+                    setLine(num, line);
+                    ++lineNum;
+                    break;
+                }
+                case "step": {
+                    stepRead = true;
+                    int num = readLineNum("Invalid step linenum tag");
+                    // after a subproof the next line is wherever the subproof ends, which is checked once every line
+                    // has been read
+                    if (lineNum < 0 ? num <= subproofStart : num != lineNum)
+                        throw new IOException("Non sequential linenum tags in file");
+                    LineRecord line = new LineRecord(false, indent);
+                    readLine(line);
+                    if (line.rule.equals("SUBPROOF")) {
+                        if (line.premises.size() < 1)
+                            throw new IOException("Invalid file format");
+                        int sub = line.premises.get(0);
+                        if (sub <= id)
+                            throw new IOException("Invalid proof id in subproof step");
+                        if (proofElements.putIfAbsent(sub, new int[]{indent + 1, num}) != null)
+                            throw new IOException("Invalid proof id in subproof step");
+                        subproofStart = num;
+                        lineNum = -1;
+                    } else {
+                        for (int p : line.premises)
+                            if (p < 0 || p >= num)
+                                throw new IOException("Invalid premise id in step");
+                        setLine(num, line);
+                        lineNum = num + 1;
+                    }
+                    break;
+                }
+                case "goal": {
+                    String[] goal = new String[2];
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        if (reader.getLocalName().equals("sen"))
+                            goal[0] = reader.getElementText();
+                        else if (reader.getLocalName().equals("raw"))
+                            goal[1] = reader.getElementText();
+                        else
+                            skipElement();
+                    }
+                    if (id == 0)
+                        goals.add(goal);
+                    break;
+                }
+                default:
+                    skipElement();
+            }
+        }
+    }
+
+    private int readLineNum(String error) throws IOException {
+        try {
+            return Integer.parseInt(reader.getAttributeValue(null, "linenum"));
+        } catch (NumberFormatException e) {
+            throw new IOException(error);
+        }
+    }
+
+    private void readLine(LineRecord line) throws XMLStreamException, IOException {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "sen":
+                    line.sen = reader.getElementText();
+                    break;
+                case "raw":
+                    line.raw = reader.getElementText();
+                    break;
+                case "rule":
+                    line.rule = reader.getElementText().toUpperCase();
+                    break;
+                case "premise":
+                    try {
+                        line.premises.add(Integer.valueOf(reader.getElementText().trim()));
+                    } catch (NumberFormatException e) {
+                        throw new IOException(line.isAssumption ? "Invalid file format" : "Invalid premise id in step");
+                    }
+                    break;
+                case "constants":
+                    line.constants = reader.getElementText();
+                    break;
+                default:
+                    skipElement();
+            }
+        }
+        if (line.raw == null && line.sen == null && !"SUBPROOF".equals(line.rule))
+            throw new IOException("Invalid file format");
+        if (!line.isAssumption && line.rule == null)
+            throw new IOException("Invalid file format");
+    }
+
+    private void setLine(int num, LineRecord line) throws IOException {
+        if (num < 0 || lineRecords.putIfAbsent(num, line) != null)
+            throw new IOException("Non sequential linenum tags in file");
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+                ++depth;
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                --depth;
+        }
+    }
+
+}
@@ -1,12 +1,11 @@
 package edu.rpi.aris.proof;
 
 import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.ast.ExpressionInterner;
+import edu.rpi.aris.ast.ParseCache;
 import org.apache.commons.lang3.Range;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 public class Goal {
     private int goalNum = -1;
     private String goalString = "";
@@ -14,7 +13,6 @@ public class Goal {
     private Proof.Status goalStatus = Proof.Status.NONE;
     private Range<Integer> errorRange = null;
     private Expression expression = null;
-    private Timer parseTimer = null;
     private LineChangeListener listener;
     private StatusChangeListener statusListener;
     private Proof proof;
@@ -57,6 +55,8 @@ public class Goal {
         this.expression = null;
         startTimer();
         proof.modify();
+        if (proof.journal != null && goalNum >= 0)
+            proof.journal.setGoalString(goalNum, expression);
         if (buildImmediately)
             buildExpression();
     }
@@ -87,27 +87,20 @@ public class Goal {
         stopTimer();
         String str = getGoalString();
         if (str.trim().length() > 0) {
-//            try {
-//                String polish = SentenceUtil.toPolishNotation(str);
-//                try {
-            expression = Expression.parseViaRust(str);//new Expression(polish);
-//                } catch (ExpressionParseException e) {
-//                    SentenceUtil.mapExceptionToStandardForm(polish, str, e);
-//                }
-            if (expression != null) {
+            try {
+                expression = ParseCache.parseOrThrow(str);
                 setStatusString("");
                 setStatus(Proof.Status.NONE);
                 setErrorRange(null);
                 return true;
-//            } catch (ExpressionParseException e) {
-            } else {
-                setStatusString("Parse Error");
+            } catch (ExpressionParseException e) {
+                expression = null;
+                setStatusString(e.getMessage());
                 setStatus(Proof.Status.INVALID_EXPRESSION);
-//                expression = null;
-//                if (e.getErrorOffset() == -1 || e.getErrorLength() == 0)
-//                    setErrorRange(null);
-//                else
-//                    setErrorRange(Range.between(e.getErrorOffset(), e.getErrorOffset() + e.getErrorLength() - 1));
+                if (e.getErrorOffset() == -1 || e.getErrorLength() == 0)
+                    setErrorRange(null);
+                else
+                    setErrorRange(Range.between(e.getErrorOffset(), e.getErrorOffset() + e.getErrorLength() - 1));
                 return false;
             }
         } else {
@@ -119,26 +112,12 @@ public class Goal {
         }
     }
 
-    private synchronized void startTimer() {
-        stopTimer();
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
-                synchronized (Goal.this) {
-                    parseTimer = null;
-                    buildExpression();
-                }
-            }
-        };
-        parseTimer = new Timer(true);
-        parseTimer.schedule(task, 1000);
+    private void startTimer() {
+        ValidationScheduler.getInstance().schedule(this, () -> buildExpression());
     }
 
-    private synchronized void stopTimer() {
-        if (parseTimer != null) {
-            parseTimer.cancel();
-            parseTimer = null;
-        }
+    private void stopTimer() {
+        ValidationScheduler.getInstance().cancel(this);
     }
 
     public Range<Integer> getErrorRange() {
@@ -165,6 +144,6 @@ public class Goal {
         if ((expression == null && !buildExpression()) || (g.expression == null && !g.buildExpression()))
             return false;
         else
-            return expression.equals(g.expression);
+            return ExpressionInterner.equal(expression, g.expression);
     }
 }
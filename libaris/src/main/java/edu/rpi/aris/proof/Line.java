@@ -1,19 +1,22 @@
 package edu.rpi.aris.proof;
 
 import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.ast.ExpressionInterner;
+import edu.rpi.aris.ast.ParseCache;
 import edu.rpi.aris.rules.RuleList;
 import org.apache.commons.lang3.Range;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.util.*;
-import java.io.ByteArrayOutputStream;
 
 public class Line {
 
+    private static final Logger logger = LogManager.getLogger(Line.class);
     private final boolean isAssumption;
     private String expressionString = "";
     private Expression expression = null;
     private Claim claim = null;
-    private Timer parseTimer = null;
     private Proof proof;
     private LineChangeListener listener;
     private HashSet<Runnable> expressionChangeListeners = new HashSet<>();
@@ -95,7 +98,10 @@ public class Line {
     }
 
     synchronized void addPremise(Line premise) {
-        premises.add(premise);
+        if (premises.add(premise)) {
+            proof.updateNative(() -> proof.rustProof.addPremise(lineNumber, premise.getLineNum()));
+            proof.premiseAdded(this, premise);
+        }
         premise.expressionChangeListeners.add(expressionChangeListener);
         if (listener != null)
             listener.premises(premises);
@@ -105,6 +111,10 @@ public class Line {
     synchronized boolean removePremise(Line premise) {
         premise.expressionChangeListeners.remove(expressionChangeListener);
         boolean removed = premises.remove(premise);
+        if (removed) {
+            proof.updateNative(() -> proof.rustProof.removePremise(lineNumber, premise.getLineNum()));
+            proof.premiseRemoved(this, premise);
+        }
         if (removed && listener != null)
             listener.premises(premises);
         onPremiseChange();
@@ -120,27 +130,19 @@ public class Line {
         if (expression == null) {
             if (str.trim().length() > 0) {
                 claim = null;
-//                try {
-//                    String polish = SentenceUtil.toPolishNotation(str);
-//                    try {
-                expression = Expression.parseViaRust(str);//new Expression(polish);
-//                    } catch (ExpressionParseException e) {
-//                        SentenceUtil.mapExceptionToStandardForm(polish, str, e);
-//                    }
-                if (expression != null) {
+                try {
+                    expression = ParseCache.parseOrThrow(str);
                     setStatusString("");
                     setStatus(Proof.Status.NONE);
                     setErrorRange(null);
-//                } catch (ExpressionParseException e) {
-                } else {
-                    setStatusString("Parse Error");
+                } catch (ExpressionParseException e) {
+                    expression = null;
+                    setStatusString(e.getMessage());
                     setStatus(Proof.Status.INVALID_EXPRESSION);
-//                    expression = null;
-//                    if (e.getErrorOffset() == -1 || e.getErrorLength() == 0)
-//                        setErrorRange(null);
-//                    else
-//                        setErrorRange(Range.between(e.getErrorOffset(), e.getErrorOffset() + e.getErrorLength() - 1));
-//                }
+                    if (e.getErrorOffset() == -1 || e.getErrorLength() == 0)
+                        setErrorRange(null);
+                    else
+                        setErrorRange(Range.between(e.getErrorOffset(), e.getErrorOffset() + e.getErrorLength() - 1));
                 }
             } else {
                 setStatusString("");
@@ -223,40 +225,40 @@ public class Line {
         return result == null;
     }
 
+    /**
+     * Builds the claim for this line so it can be checked along with other lines in a {@link edu.rpi.aris.rules.RuleBatch}
+     *
+     * @return the claim to check or null if the line has no claim, in which case its status has already been set
+     */
+    synchronized Claim prepareClaim() {
+        stopTimer();
+        buildClaim();
+        return claim;
+    }
+
+    synchronized boolean setClaimResult(String result) {
+        return haveClaimResult(result);
+    }
+
     private synchronized boolean verifyClaim(boolean stopTimer) {
-        try {
-            ByteArrayOutputStream boas = new ByteArrayOutputStream();
-            new SaveManager(new SaveInfoListener() {
-                public boolean notArisFile(String filename, String programName, String programVersion) { return false; }
-                public void integrityCheckFailed(String filename) { }
-            }).saveProof(proof, boas);
-            String xml = boas.toString("utf8");
-            if(proof.getNumLines() > 0) {
-                RustProof rp = RustProof.fromXml(xml);
-                if(rp != null) {
-                    System.out.printf("Deserialized rust proof: %s\n", rp.toString());
-                    if (stopTimer)
-                        stopTimer();
-                    buildClaim();
-                    if(claim != null) {
-                        String result = rp.checkRuleAtLine(this.lineNumber);
-                        return haveClaimResult(result);
-                    }
-                } else {
-                    System.err.printf("Warning: RustProof.fromXml returned null\n");
-                }
-            }
-        } catch(Exception e) {
-            e.printStackTrace();
-        }
         if (stopTimer)
             stopTimer();
         buildClaim();
-        if (claim != null) {
-            String result = claim.isValidClaim();
-            haveClaimResult(result);
+        if (claim == null)
+            return false;
+        String result;
+        // the native proof is kept in sync through deltas so the rule can be checked against it directly
+        if (proof.isNativeInSync()) {
+            try {
+                result = proof.rustProof.checkRuleAtLine(lineNumber);
+            } catch (Exception | UnsatisfiedLinkError e) {
+                logger.error("Native rule check failed for line " + lineNumber, e);
+                result = claim.isValidClaim();
+            }
+        } else {
+            result = claim.isValidClaim();
         }
-        return false;
+        return haveClaimResult(result);
     }
 
     public String getExpressionString() {
@@ -270,6 +272,7 @@ public class Line {
     public void setExpressionString(String expressionString, boolean buildImmediately) {
         this.proof.rustProof.setExpressionString(this.lineNumber, expressionString);
         this.expressionString = expressionString;
+        proof.invalidate(this);
         synchronized (Line.this) {
             expression = null;
             claim = null;
@@ -284,6 +287,8 @@ public class Line {
         if (buildImmediately)
             buildExpression();
         proof.modify();
+        if (proof.journal != null)
+            proof.journal.setExpressionString(lineNumber, expressionString);
     }
 
     public boolean isUnderlined() {
@@ -302,12 +307,16 @@ public class Line {
     }
 
     public void setSelectedRule(RuleList rule) {
+        proof.updateNative(() -> proof.rustProof.setRule(lineNumber, rule == null ? null : rule.name()));
         this.selectedRule = rule;
+        proof.invalidate(this);
         if (listener != null)
             listener.selectedRule(rule);
         verifyClaim();
         proof.resetGoalStatus();
         proof.modify();
+        if (proof.journal != null)
+            proof.journal.setSelectedRule(lineNumber, rule);
     }
 
     public String getStatusString() {
@@ -322,26 +331,12 @@ public class Line {
             statusListener.statusString(this, status);
     }
 
-    private synchronized void startTimer() {
-        stopTimer();
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
-                synchronized (Line.this) {
-                    parseTimer = null;
-                    verifyClaim(false);
-                }
-            }
-        };
-        parseTimer = new Timer(true);
-        parseTimer.schedule(task, 1000);
+    private void startTimer() {
+        ValidationScheduler.getInstance().schedule(this, () -> verifyClaim(false));
     }
 
-    private synchronized void stopTimer() {
-        if (parseTimer != null) {
-            parseTimer.cancel();
-            parseTimer = null;
-        }
+    private void stopTimer() {
+        ValidationScheduler.getInstance().cancel(this);
     }
 
     public Range<Integer> getErrorRange() {
@@ -368,7 +363,7 @@ public class Line {
         if (expression == null || l.expression == null)
             return false;
         else
-            return expression.equals(l.expression);
+            return ExpressionInterner.equal(expression, l.expression);
     }
 
     public TreeSet<String> getConstants() {
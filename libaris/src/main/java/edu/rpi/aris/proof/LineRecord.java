@@ -0,0 +1,47 @@
+package edu.rpi.aris.proof;
+
+import edu.rpi.aris.ast.ParseCache;
+import edu.rpi.aris.rules.RuleList;
+
+import java.util.ArrayList;
+
+/**
+ * The contents of a single line as read from a saved proof, before it is added to a {@link Proof}
+ */
+class LineRecord {
+
+    final boolean isAssumption;
+    final int indent;
+    final ArrayList<Integer> premises = new ArrayList<>(2);
+    String sen, raw, rule, constants;
+
+    LineRecord(boolean isAssumption, int indent) {
+        this.isAssumption = isAssumption;
+        this.indent = indent;
+    }
+
+    /**
+     * @return the raw expression string, rebuilt from the sentence for files that only saved the sentence
+     */
+    String getRaw() {
+        return raw == null ? ParseCache.parse(sen).toDebugString() : raw;
+    }
+
+    /**
+     * @return the selected rule or null if there is none or it is not a known rule
+     */
+    RuleList getRule() {
+        if (rule == null)
+            return null;
+        try {
+            return RuleList.valueOf(rule);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    boolean isPremise() {
+        return isAssumption && indent == 0;
+    }
+
+}
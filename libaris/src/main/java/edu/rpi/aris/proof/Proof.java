@@ -1,16 +1,24 @@
 package edu.rpi.aris.proof;
 
 import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.rules.RuleBatch;
 import edu.rpi.aris.rules.RuleList;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Triple;
-
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Objects;
-
-public class Proof {
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+public class Proof implements AutoCloseable {
+    private static final int CLAIM_BATCH_SIZE = 64;
+    private static final Logger logger = LogManager.getLogger(Proof.class);
+    // cleared if the loaded native library predates the removeLine, addPremise, removePremise and setRule entry points.
+    // The native proof then falls out of sync and lines are checked with Claim.isValidClaim instead
+    private static volatile boolean nativeDeltas = true;
     public RustProof rustProof;
     private final HashSet<String> authors = new HashSet<>();
     private final HashSet<RuleList> allowedRules = new HashSet<>();
@@ -18,9 +26,14 @@ public class Proof {
     private ArrayList<Goal> goals = new ArrayList<>();
     private int numPremises = 0;
     private boolean modified = false;
+    // appends each edit to the autosave journal while one is attached
+    ProofJournal journal;
+    // premise -> lines citing it, and the memoized result of recursiveLineVerification for each line
+    private final IdentityHashMap<Line, Set<Line>> dependents = new IdentityHashMap<>();
+    private final IdentityHashMap<Line, Boolean> verified = new IdentityHashMap<>();
 
     public Proof(String author) {
-        rustProof = RustProof.createProof();
+        rustProof = RustProofPool.getInstance().acquire();
         authors.add(author == null ? "UNKNOWN" : author);
         modify();
     }
@@ -39,6 +52,39 @@ public class Proof {
         this.allowedRules.removeIf(Objects::isNull);
     }
 
+    /**
+     * Returns the native proof to {@link RustProofPool} so it can be reused. The proof must not be used afterwards
+     */
+    @Override
+    public synchronized void close() {
+        if (rustProof != null) {
+            RustProofPool.getInstance().release(rustProof);
+            rustProof = null;
+        }
+    }
+
+    /**
+     * Applies an edit to the native proof unless the native library is missing the entry points needed to keep it in
+     * sync
+     */
+    void updateNative(Runnable delta) {
+        if (!nativeDeltas)
+            return;
+        try {
+            delta.run();
+        } catch (UnsatisfiedLinkError e) {
+            nativeDeltas = false;
+            logger.warn("The native library does not support proof updates, falling back to checking claims in java", e);
+        }
+    }
+
+    /**
+     * @return true if the native proof is kept in sync with this proof's lines
+     */
+    boolean isNativeInSync() {
+        return nativeDeltas;
+    }
+
     public Line getLine(int index) {
         return lines.get(index);
     }
@@ -61,14 +107,23 @@ public class Proof {
     }
 
     public Line addLine(int index, boolean isAssumption, int subProofLevel) {
+        Line l = insertLine(index, isAssumption, subProofLevel);
+        if (l != null && journal != null)
+            journal.addLine(index, isAssumption, subProofLevel);
+        return l;
+    }
+
+    private Line insertLine(int index, boolean isAssumption, int subProofLevel) {
         rustProof.addLine(index, isAssumption, subProofLevel);
         if (index <= lines.size()) {
             Line l = new Line(subProofLevel, isAssumption, this);
             lines.add(index, l);
-            for (int i = 0; i < lines.size(); ++i)
+            // lines before the new one keep their numbers
+            for (int i = index; i < lines.size(); ++i)
                 lines.get(i).setLineNum(i);
             if (isAssumption && subProofLevel == 0)
                 setNumPremises(getNumPremises() + 1);
+            invalidate(l);
             modify();
             return l;
         } else
@@ -76,10 +131,12 @@ public class Proof {
     }
 
     public Line addPremise() {
-        Line line = addLine(getNumPremises(), true, 0);
+        Line line = insertLine(getNumPremises(), true, 0);
         line.setUnderlined(line.getLineNum() == getNumPremises() - 1);
         for (int i = 0; i < line.getLineNum(); ++i)
             getLine(i).setUnderlined(false);
+        if (journal != null)
+            journal.addPremise();
         return line;
     }
 
@@ -89,6 +146,8 @@ public class Proof {
         for (int i = index; i < goals.size(); ++i)
             goals.get(i).setGoalNum(i);
         modify();
+        if (journal != null)
+            journal.addGoal(index);
         return goal;
     }
 
@@ -97,6 +156,8 @@ public class Proof {
         for (int i = goalNum; i < goals.size(); ++i)
             goals.get(i).setGoalNum(i);
         modify();
+        if (journal != null)
+            journal.removeGoal(goalNum);
     }
 
     public HashSet<Integer> getPossiblePremiseLines(Line line) {
@@ -132,6 +193,8 @@ public class Proof {
         if (!wasSelected)
             line.addPremise(premise);
         modify();
+        if (journal != null)
+            journal.setPremise(selected, premise.getLineNum(), !wasSelected);
         return new ImmutableTriple<>(selected, premise.getLineNum(), wasSelected);
     }
 
@@ -153,6 +216,8 @@ public class Proof {
         else
             line.removePremise(premise);
         modify();
+        if (journal != null)
+            journal.setPremise(selected, premise.getLineNum(), isSelected);
     }
 
     public HashSet<Line> getHighlighted(Line line) {
@@ -180,9 +245,15 @@ public class Proof {
 
     public void delete(int lineNum) {
         if (lineNum > 0 || (getNumPremises() > 1 && lineNum >= 0)) {
+            invalidate(lines.get(lineNum));
             for (Line l : lines)
                 l.lineDeleted(lines.get(lineNum));
             Line removed = lines.remove(lineNum);
+            synchronized (verified) {
+                dependents.remove(removed);
+                verified.remove(removed);
+            }
+            updateNative(() -> rustProof.removeLine(lineNum));
             for (int i = 0; i < lines.size(); ++i)
                 lines.get(i).setLineNum(i);
             if (getNumPremises() > 1 && lineNum < getNumPremises()) {
@@ -191,70 +262,247 @@ public class Proof {
                 setNumPremises(getNumPremises() - 1);
             }
             modify();
+            if (journal != null)
+                journal.delete(lineNum);
         }
     }
 
     public ArrayList<Status> verifyProof() {
-        ArrayList<Status> goalStatus = new ArrayList<>();
+        return verifyProof(null);
+    }
+
+    /**
+     * Verifies every goal in the proof. The claims of the lines the goals depend on are first checked in batches. If a
+     * pool is given those lines are then verified on it, with lines that have no premise relationship between them
+     * running concurrently and each line waiting only on the lines it depends on. The goal statuses are then combined
+     * from the cached results
+     *
+     * @param pool the pool to verify lines on or null to verify them on the calling thread
+     * @return the status of each goal
+     */
+    public ArrayList<Status> verifyProof(ForkJoinPool pool) {
+        ArrayList<ArrayList<Line>> goalLines = new ArrayList<>();
+        HashMap<Expression, ArrayList<Line>> topLevel = null;
         for (Goal g : goals) {
             if (g.getExpression() == null && !g.buildExpression())
-                goalStatus.add(Status.INVALID_EXPRESSION);
+                goalLines.add(null);
             else {
-                ArrayList<Line> lines = findGoals(g.getExpression());
-                if (lines.size() == 0) {
-                    g.setStatus(Status.INVALID_CLAIM);
-                    g.setStatusString("This goal is not a top level statement in the proof");
-                    goalStatus.add(Status.INVALID_CLAIM);
-                } else {
-                    boolean valid = false;
-                    for (Line l : lines) {
-                        if (recursiveLineVerification(l)) {
-                            valid = true;
-                            break;
-                        }
+                if (topLevel == null)
+                    topLevel = getTopLevelLines();
+                goalLines.add(topLevel.getOrDefault(g.getExpression(), new ArrayList<>()));
+            }
+        }
+        ArrayList<Line> roots = new ArrayList<>();
+        for (ArrayList<Line> lines : goalLines)
+            if (lines != null)
+                roots.addAll(lines);
+        batchVerifyClaims(roots, pool);
+        if (pool != null)
+            pool.invoke(new ProofVerificationTask(roots));
+        ArrayList<Status> goalStatus = new ArrayList<>();
+        for (int i = 0; i < goals.size(); ++i) {
+            Goal g = goals.get(i);
+            ArrayList<Line> lines = goalLines.get(i);
+            if (lines == null)
+                goalStatus.add(Status.INVALID_EXPRESSION);
+            else if (lines.size() == 0) {
+                g.setStatus(Status.INVALID_CLAIM);
+                g.setStatusString("This goal is not a top level statement in the proof");
+                goalStatus.add(Status.INVALID_CLAIM);
+            } else {
+                boolean valid = false;
+                for (Line l : lines) {
+                    if (recursiveLineVerification(l)) {
+                        valid = true;
+                        break;
                     }
-                    g.setStatus(valid ? Status.CORRECT : Status.INVALID_CLAIM);
-                    g.setStatusString(valid ? "Congratulations! You proved the goal!" : "The goal does not follow from the support steps");
-                    goalStatus.add(g.getStatus());
                 }
+                g.setStatus(valid ? Status.CORRECT : Status.INVALID_CLAIM);
+                g.setStatusString(valid ? "Congratulations! You proved the goal!" : "The goal does not follow from the support steps");
+                goalStatus.add(g.getStatus());
             }
         }
         return goalStatus;
     }
 
+    /**
+     * Checks the claim of every line in the proof, not only the lines the goals depend on, so every line has a status.
+     * The rule checks are batched the same way as in {@link #verifyProof(ForkJoinPool)}
+     *
+     * @param pool the pool to split the batches across or null to check them on the calling thread
+     */
+    public void verifyAllLines(ForkJoinPool pool) {
+        batchVerifyClaims(new ArrayList<>(lines), pool);
+    }
+
+    /**
+     * Checks the claims of every unchecked line the given lines depend on in batches so the rules are checked with a
+     * few native calls instead of one call per line. The batches are split across the pool if one is given
+     */
+    private void batchVerifyClaims(ArrayList<Line> roots, ForkJoinPool pool) {
+        ArrayList<Line> pending = new ArrayList<>();
+        Set<Line> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Line> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            Line l = queue.pop();
+            if (!visited.add(l) || getVerified(l) != null)
+                continue;
+            if (!l.isAssumption() && l.getStatus() == Status.NONE)
+                pending.add(l);
+            queue.addAll(getVerificationDependencies(l));
+        }
+        if (pending.isEmpty())
+            return;
+        if (pool == null || pending.size() <= CLAIM_BATCH_SIZE)
+            verifyClaims(pending);
+        else {
+            ArrayList<ClaimBatchTask> tasks = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i += CLAIM_BATCH_SIZE)
+                tasks.add(new ClaimBatchTask(pending.subList(i, Math.min(pending.size(), i + CLAIM_BATCH_SIZE))));
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    private static void verifyClaims(List<Line> lines) {
+        RuleBatch batch = new RuleBatch();
+        ArrayList<Line> batched = new ArrayList<>();
+        for (Line l : lines) {
+            Claim c = l.prepareClaim();
+            if (c != null) {
+                batch.add(c);
+                batched.add(l);
+            }
+        }
+        String[] results = batch.verify();
+        for (int i = 0; i < results.length; ++i)
+            batched.get(i).setClaimResult(results[i]);
+    }
+
+    private Boolean getVerified(Line l) {
+        synchronized (verified) {
+            return verified.get(l);
+        }
+    }
+
     private boolean recursiveLineVerification(Line l) {
+        Boolean cached = getVerified(l);
+        if (cached != null)
+            return cached;
+        boolean result = checkLine(l);
+        if (result)
+            for (Line d : getVerificationDependencies(l))
+                if (!recursiveLineVerification(d)) {
+                    result = false;
+                    break;
+                }
+        synchronized (verified) {
+            verified.put(l, result);
+        }
+        return result;
+    }
+
+    /**
+     * Checks the given line on its own without looking at the lines it depends on
+     */
+    private boolean checkLine(Line l) {
+        if (l.isAssumption())
+            return true;
+        if (l.getStatus() == Status.NONE || l.getStatus() == Status.CORRECT)
+            return l.getStatus() == Status.CORRECT || l.verifyClaim();
+        return false;
+    }
+
+    /**
+     * Returns the lines that must also be correct for the given line to be correct. For a subproof assumption these
+     * are the conclusions of the subproof, for any other line these are its premises outside of its own subproof
+     */
+    private ArrayList<Line> getVerificationDependencies(Line l) {
+        ArrayList<Line> dependencies = new ArrayList<>();
         if (l.isAssumption()) {
-            if (l.getSubProofLevel() == 0)
-                return true;
-            for (Line c : getSubProofConclusions(l)) {
-                if (!recursiveLineVerification(c))
-                    return false;
+            if (l.getSubProofLevel() > 0)
+                dependencies.addAll(getSubProofConclusions(l));
+        } else {
+            for (Line p : l.getPremises())
+                if (!p.isAssumption() || p.getSubProofLevel() > l.getSubProofLevel())
+                    dependencies.add(p);
+        }
+        return dependencies;
+    }
+
+    void premiseAdded(Line line, Line premise) {
+        synchronized (verified) {
+            dependents.computeIfAbsent(premise, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(line);
+        }
+        invalidate(line);
+    }
+
+    void premiseRemoved(Line line, Line premise) {
+        synchronized (verified) {
+            Set<Line> set = dependents.get(premise);
+            if (set != null && set.remove(line) && set.isEmpty())
+                dependents.remove(premise);
+        }
+        invalidate(line);
+    }
+
+    /**
+     * Drops the cached verification result of the given line, every line that transitively depends on it and every
+     * subproof assumption enclosing one of those lines (an assumption's result is derived from its conclusions)
+     */
+    void invalidate(Line line) {
+        ArrayDeque<Line> dirty = new ArrayDeque<>(getEnclosingAssumptions(line));
+        dirty.add(line);
+        synchronized (verified) {
+            Set<Line> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            while (!dirty.isEmpty()) {
+                Line l = dirty.poll();
+                if (!seen.add(l))
+                    continue;
+                verified.remove(l);
+                Set<Line> deps = dependents.get(l);
+                if (deps != null)
+                    dirty.addAll(deps);
             }
-            return true;
         }
-        if (l.getStatus() == Status.NONE || l.getStatus() == Status.CORRECT) {
-            if (l.getStatus() != Status.CORRECT && !l.verifyClaim())
-                return false;
-            for (Line p : l.getPremises())
-                if ((!p.isAssumption() || p.getSubProofLevel() > l.getSubProofLevel()) && !recursiveLineVerification(p))
-                    return false;
-            return true;
-        } else
-            return false;
     }
 
-    private ArrayList<Line> findGoals(Expression e) {
-        ArrayList<Line> goals = new ArrayList<>();
-        if (e == null)
-            return goals;
+    private ArrayList<Line> getEnclosingAssumptions(Line line) {
+        ArrayList<Line> enclosing = new ArrayList<>();
+        int lvl = line.getSubProofLevel();
+        for (int i = line.getLineNum(); i >= 0 && i < lines.size() && lvl > 0; --i) {
+            Line l = lines.get(i);
+            if (l.getSubProofLevel() > lvl)
+                continue;
+            lvl = l.getSubProofLevel();
+            if (l.isAssumption() && lvl > 0) {
+                enclosing.add(l);
+                --lvl;
+            }
+        }
+        return enclosing;
+    }
+
+    /**
+     * Indexes the top level lines of the proof by their expression so goals can be matched with a hash lookup. The
+     * lines for each expression are in reverse order to match the order goals are checked in
+     */
+    private HashMap<Expression, ArrayList<Line>> getTopLevelLines() {
+        HashMap<Expression, ArrayList<Line>> topLevel = new HashMap<>();
         for (int i = getNumLines() - 1; i >= 0; --i) {
             Line l = lines.get(i);
+            if (l.getSubProofLevel() != 0)
+                continue;
             if (l.getExpression() == null)
                 l.buildExpression();
-            if (l.getSubProofLevel() == 0 && l.getExpression() != null && l.getExpression().equals(e))
-                goals.add(l);
+            if (l.getExpression() != null)
+                topLevel.computeIfAbsent(l.getExpression(), e -> new ArrayList<>()).add(l);
         }
-        return goals;
+        return topLevel;
     }
 
     ArrayList<Line> getSubProofConclusions(Line assumption) {
@@ -288,6 +536,9 @@ public class Proof {
     }
 
     public void resetProofStatus() {
+        synchronized (verified) {
+            verified.clear();
+        }
         for (Line l : lines) {
             if (l.getStatus() == Status.CORRECT || l.getStatus() == Status.INVALID_CLAIM) {
                 l.setStatus(Status.NONE);
@@ -321,6 +572,106 @@ public class Proof {
         return allowedRules;
     }
 
+    /**
+     * Called after the set returned by {@link Line#getConstants()} has been changed directly
+     */
+    public void constantsChanged(Line line) {
+        modify();
+        if (journal != null)
+            journal.setConstants(line.getLineNum(), line.getConstants());
+    }
+
+    /**
+     * Called after the set returned by {@link #getAllowedRules()} has been changed directly
+     */
+    public void allowedRulesChanged() {
+        modify();
+        if (journal != null)
+            journal.setAllowedRules(allowedRules);
+    }
+
+    private static class ClaimBatchTask extends RecursiveAction {
+
+        private final List<Line> lines;
+
+        ClaimBatchTask(List<Line> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        protected void compute() {
+            verifyClaims(lines);
+        }
+    }
+
+    private class ProofVerificationTask extends RecursiveAction {
+
+        private final ArrayList<Line> roots;
+        private final Map<Line, LineVerificationTask> tasks = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        ProofVerificationTask(ArrayList<Line> roots) {
+            this.roots = roots;
+        }
+
+        private ArrayList<LineVerificationTask> fork(Collection<Line> lines) {
+            ArrayList<LineVerificationTask> forked = new ArrayList<>();
+            for (Line l : lines) {
+                if (getVerified(l) != null)
+                    continue;
+                LineVerificationTask task;
+                boolean created = false;
+                synchronized (tasks) {
+                    task = tasks.get(l);
+                    if (task == null) {
+                        task = new LineVerificationTask(this, l);
+                        tasks.put(l, task);
+                        created = true;
+                    }
+                }
+                if (created)
+                    task.fork();
+                forked.add(task);
+            }
+            return forked;
+        }
+
+        @Override
+        protected void compute() {
+            for (LineVerificationTask task : fork(roots))
+                task.join();
+        }
+    }
+
+    private class LineVerificationTask extends RecursiveTask<Boolean> {
+
+        private final ProofVerificationTask parent;
+        private final Line line;
+
+        LineVerificationTask(ProofVerificationTask parent, Line line) {
+            this.parent = parent;
+            this.line = line;
+        }
+
+        @Override
+        protected Boolean compute() {
+            Boolean cached = getVerified(line);
+            if (cached != null)
+                return cached;
+            ArrayList<Line> dependencies = getVerificationDependencies(line);
+            ArrayList<LineVerificationTask> forked = parent.fork(dependencies);
+            boolean result = checkLine(line);
+            for (LineVerificationTask task : forked)
+                task.join();
+            // dependencies that were already cached were not forked so read every result back through the cache
+            for (Line d : dependencies)
+                result &= recursiveLineVerification(d);
+            synchronized (verified) {
+                verified.put(line, result);
+            }
+            return result;
+        }
+    }
+
     public enum Status {
 
         NONE("no_icon.png"),
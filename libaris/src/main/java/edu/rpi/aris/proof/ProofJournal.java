@@ -0,0 +1,555 @@
+package edu.rpi.aris.proof;
+
+import edu.rpi.aris.rules.RuleList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the edits made to a {@link Proof} so unsaved work survives a crash without rewriting the whole
+ * proof on every change. Each edit is appended to the journal file as a single framed record. Every
+ * {@link #CHECKPOINT_INTERVAL} records the whole proof is written to a checkpoint file in the binary proof format and
+ * the journal is truncated. After a crash {@link #recover(File, String)} loads each checkpoint and replays the records
+ * written after it.
+ * <p>
+ * Journal record layout, where varint is an unsigned LEB128 integer and str is a varint byte length followed by UTF-8:
+ * <pre>
+ * int payload length, int CRC32 of the payload, payload: long sequence number, byte type, arguments
+ * </pre>
+ * A record that is cut short or fails its CRC marks the end of the journal, so a crash while appending only loses the
+ * edit being written. Checkpoints store the sequence number of the last record they include and are replaced
+ * atomically, so records already in a checkpoint are skipped if the journal was not truncated before a crash
+ */
+public class ProofJournal implements Closeable {
+
+    public static final String JOURNAL_EXT = "journal";
+    public static final String CHECKPOINT_EXT = "checkpoint";
+    static final int CHECKPOINT_INTERVAL = 256;
+    private static final Logger logger = LogManager.getLogger(ProofJournal.class);
+    private static final byte[] CHECKPOINT_MAGIC = {0, 'B', 'R', 'C'};
+    private static final int CHECKPOINT_VERSION = 1;
+    // guards against allocating huge arrays for a corrupt record length
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+
+    private static final byte ADD_LINE = 1;
+    private static final byte ADD_PREMISE = 2;
+    private static final byte DELETE_LINE = 3;
+    private static final byte SET_EXPRESSION = 4;
+    private static final byte SET_PREMISE = 5;
+    private static final byte SET_RULE = 6;
+    private static final byte ADD_GOAL = 7;
+    private static final byte REMOVE_GOAL = 8;
+    private static final byte SET_GOAL = 9;
+    private static final byte SET_CONSTANTS = 10;
+    private static final byte SET_ALLOWED_RULES = 11;
+
+    private final Proof proof;
+    private final File journalFile;
+    private final File checkpointFile;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+    private final DataOutputStream recordData = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    private File saveFile;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private FileLock lock;
+    private long seq;
+    private int sinceCheckpoint;
+
+    private ProofJournal(Proof proof, File journalFile, File checkpointFile, File saveFile, long seq) {
+        this.proof = proof;
+        this.journalFile = journalFile;
+        this.checkpointFile = checkpointFile;
+        this.saveFile = saveFile;
+        this.seq = seq;
+    }
+
+    /**
+     * Starts a new journal for the given proof in the given directory and attaches it to the proof
+     *
+     * @param dir      the directory holding the journals
+     * @param proof    the proof to journal
+     * @param saveFile the file the proof is saved to or null if it has not been saved
+     */
+    public static ProofJournal create(File dir, Proof proof, File saveFile) throws IOException {
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IOException("Failed to create journal directory " + dir);
+        String id = UUID.randomUUID().toString();
+        ProofJournal journal = new ProofJournal(proof, new File(dir, id + "." + JOURNAL_EXT), new File(dir, id + "." + CHECKPOINT_EXT), saveFile, 0);
+        journal.open();
+        journal.checkpoint(!proof.isModified());
+        proof.journal = journal;
+        return journal;
+    }
+
+    /**
+     * Rebuilds the proofs of all journals in the given directory that were left behind by a crash. Journals with no
+     * edits since their proof was last saved are deleted, as are journals that cannot be read. Journals still in use
+     * by another instance are skipped. The returned journals are attached to their rebuilt proofs and keep recording
+     *
+     * @param dir    the directory holding the journals
+     * @param author the current user, added to the authors of the rebuilt proofs
+     */
+    public static List<ProofJournal> recover(File dir, String author) {
+        ArrayList<ProofJournal> recovered = new ArrayList<>();
+        File[] checkpoints = dir.listFiles((d, name) -> name.endsWith("." + CHECKPOINT_EXT));
+        if (checkpoints == null)
+            return recovered;
+        for (File checkpoint : checkpoints) {
+            String id = checkpoint.getName().substring(0, checkpoint.getName().length() - CHECKPOINT_EXT.length() - 1);
+            File journalFile = new File(dir, id + "." + JOURNAL_EXT);
+            ProofJournal journal = null;
+            try {
+                journal = load(checkpoint, journalFile, author);
+                if (journal == null)
+                    continue;
+                if (journal.proof.isModified()) {
+                    journal.proof.journal = journal;
+                    recovered.add(journal);
+                } else
+                    journal.delete();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to recover journal " + checkpoint, e);
+                if (journal != null)
+                    journal.delete();
+                else if (!checkpoint.delete() || (journalFile.exists() && !journalFile.delete()))
+                    logger.error("Failed to delete journal " + checkpoint);
+            }
+        }
+        return recovered;
+    }
+
+    private static ProofJournal load(File checkpointFile, File journalFile, String author) throws IOException {
+        ProofJournal journal;
+        boolean saved;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            byte[] magic = new byte[CHECKPOINT_MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, CHECKPOINT_MAGIC) || in.readUnsignedByte() != CHECKPOINT_VERSION)
+                throw new IOException("Invalid journal checkpoint");
+            long seq = in.readLong();
+            saved = in.readBoolean();
+            String path = in.readUTF();
+            BinaryProofFormat.Decoded decoded = BinaryProofFormat.read(in, XmlResources.get().streamHash);
+            if (!decoded.hashValid)
+                throw new IOException("Journal checkpoint is corrupt");
+            SaveManager.checkLines(decoded.lines);
+            Proof proof = new Proof(decoded.authors, author, decoded.allowedRules);
+            SaveManager.addLines(proof, decoded.lines, decoded.goals);
+            journal = new ProofJournal(proof, journalFile, checkpointFile, path.isEmpty() ? null : new File(path), seq);
+        }
+        if (!journal.open())
+            return null;
+        int replayed = journal.replay();
+        if (saved && replayed == 0)
+            journal.proof.saved();
+        else
+            journal.proof.modify();
+        return journal;
+    }
+
+    /**
+     * Opens the journal file for appending and locks it so other instances do not recover it while it is in use
+     *
+     * @return false if the journal is locked by another instance
+     */
+    private boolean open() throws IOException {
+        file = new RandomAccessFile(journalFile, "rw");
+        channel = file.getChannel();
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            file.close();
+            file = null;
+            channel = null;
+            return false;
+        }
+        channel.position(channel.size());
+        return true;
+    }
+
+    /**
+     * Applies the records after the checkpoint and cuts off anything after the last complete record
+     *
+     * @return the number of records applied
+     */
+    private int replay() throws IOException {
+        long checkpointSeq = seq;
+        long validLength = 0;
+        int replayed = 0;
+        // read through the locked channel, closing this stream would close the journal
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        while (true) {
+            int length;
+            int expectedCrc;
+            byte[] payload;
+            try {
+                length = in.readInt();
+                expectedCrc = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE)
+                    break;
+                payload = new byte[length];
+                in.readFully(payload);
+            } catch (EOFException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            if ((int) crc.getValue() != expectedCrc)
+                break;
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+            long recordSeq = data.readLong();
+            if (recordSeq > checkpointSeq) {
+                try {
+                    apply(data);
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Stopped replaying journal " + journalFile + " at an invalid record", e);
+                    break;
+                }
+                seq = recordSeq;
+                ++replayed;
+            }
+            validLength += 8 + length;
+        }
+        channel.truncate(validLength);
+        channel.position(validLength);
+        sinceCheckpoint = replayed;
+        return replayed;
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ADD_LINE:
+                int index = BinaryProofFormat.readVarInt(in);
+                boolean isAssumption = in.readBoolean();
+                if (proof.addLine(index, isAssumption, BinaryProofFormat.readVarInt(in)) == null)
+                    throw new IOException("Invalid line index in journal");
+                break;
+            case ADD_PREMISE:
+                proof.addPremise();
+                break;
+            case DELETE_LINE:
+                proof.delete(BinaryProofFormat.readVarInt(in));
+                break;
+            case SET_EXPRESSION:
+                proof.getLine(BinaryProofFormat.readVarInt(in)).setExpressionString(readString(in), true);
+                break;
+            case SET_PREMISE:
+                int selected = BinaryProofFormat.readVarInt(in);
+                Line premise = proof.getLine(BinaryProofFormat.readVarInt(in));
+                proof.setPremise(selected, premise, in.readBoolean());
+                break;
+            case SET_RULE:
+                Line line = proof.getLine(BinaryProofFormat.readVarInt(in));
+                int rule = BinaryProofFormat.readVarInt(in);
+                RuleList[] rules = RuleList.values();
+                line.setSelectedRule(rule > 0 && rule <= rules.length ? rules[rule - 1] : null);
+                break;
+            case ADD_GOAL:
+                proof.addGoal(BinaryProofFormat.readVarInt(in));
+                break;
+            case REMOVE_GOAL:
+                proof.removeGoal(BinaryProofFormat.readVarInt(in));
+                break;
+            case SET_GOAL:
+                proof.getGoal(BinaryProofFormat.readVarInt(in)).setGoalString(readString(in), true);
+                break;
+            case SET_CONSTANTS:
+                TreeSet<String> constants = proof.getLine(BinaryProofFormat.readVarInt(in)).getConstants();
+                constants.clear();
+                int numConstants = BinaryProofFormat.readVarInt(in);
+                for (int i = 0; i < numConstants; ++i)
+                    constants.add(readString(in));
+                break;
+            case SET_ALLOWED_RULES:
+                RuleList[] ruleList = RuleList.values();
+                proof.getAllowedRules().clear();
+                int numRules = BinaryProofFormat.readVarInt(in);
+                for (int i = 0; i < numRules; ++i) {
+                    int ordinal = BinaryProofFormat.readVarInt(in);
+                    if (ordinal < ruleList.length)
+                        proof.getAllowedRules().add(ruleList[ordinal]);
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = BinaryProofFormat.readVarInt(in);
+        if (length < 0 || length > MAX_RECORD_SIZE)
+            throw new IOException("Invalid string length in journal");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeString(String str) throws IOException {
+        byte[] bytes = (str == null ? "" : str).getBytes(StandardCharsets.UTF_8);
+        BinaryProofFormat.writeVarInt(recordData, bytes.length);
+        recordData.write(bytes);
+    }
+
+    private void begin(byte type) throws IOException {
+        record.reset();
+        recordData.writeLong(seq + 1);
+        recordData.writeByte(type);
+    }
+
+    /**
+     * Writes the record built since {@link #begin(byte)} to the journal with a single write. The record goes to the
+     * operating system, which keeps it through a crash of the client, but is not forced to disk so appending stays
+     * cheap. A failed write is logged and stops the journal rather than interrupting the edit
+     */
+    private void end() throws IOException {
+        if (channel == null)
+            return;
+        byte[] payload = record.toByteArray();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (frame.hasRemaining())
+            channel.write(frame);
+        ++seq;
+        if (++sinceCheckpoint >= CHECKPOINT_INTERVAL)
+            checkpoint(false);
+    }
+
+    private void failed(IOException e) {
+        logger.error("Failed to write to proof journal " + journalFile + ", autosave is disabled for this proof", e);
+        try {
+            closeFile();
+        } catch (IOException ignored) {
+        }
+    }
+
+    synchronized void addLine(int index, boolean isAssumption, int subProofLevel) {
+        try {
+            begin(ADD_LINE);
+            BinaryProofFormat.writeVarInt(recordData, index);
+            recordData.writeBoolean(isAssumption);
+            BinaryProofFormat.writeVarInt(recordData, subProofLevel);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void addPremise() {
+        try {
+            begin(ADD_PREMISE);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void delete(int lineNum) {
+        try {
+            begin(DELETE_LINE);
+            BinaryProofFormat.writeVarInt(recordData, lineNum);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void setExpressionString(int lineNum, String expression) {
+        try {
+            begin(SET_EXPRESSION);
+            BinaryProofFormat.writeVarInt(recordData, lineNum);
+            writeString(expression);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void setPremise(int lineNum, int premiseNum, boolean isSelected) {
+        try {
+            begin(SET_PREMISE);
+            BinaryProofFormat.writeVarInt(recordData, lineNum);
+            BinaryProofFormat.writeVarInt(recordData, premiseNum);
+            recordData.writeBoolean(isSelected);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void setSelectedRule(int lineNum, RuleList rule) {
+        try {
+            begin(SET_RULE);
+            BinaryProofFormat.writeVarInt(recordData, lineNum);
+            BinaryProofFormat.writeVarInt(recordData, rule == null ? 0 : rule.ordinal() + 1);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void addGoal(int index) {
+        try {
+            begin(ADD_GOAL);
+            BinaryProofFormat.writeVarInt(recordData, index);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void removeGoal(int index) {
+        try {
+            begin(REMOVE_GOAL);
+            BinaryProofFormat.writeVarInt(recordData, index);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void setGoalString(int index, String goal) {
+        try {
+            begin(SET_GOAL);
+            BinaryProofFormat.writeVarInt(recordData, index);
+            writeString(goal);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void setConstants(int lineNum, Collection<String> constants) {
+        try {
+            begin(SET_CONSTANTS);
+            BinaryProofFormat.writeVarInt(recordData, lineNum);
+            BinaryProofFormat.writeVarInt(recordData, constants.size());
+            for (String c : constants)
+                writeString(c);
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    synchronized void setAllowedRules(Collection<RuleList> allowedRules) {
+        try {
+            begin(SET_ALLOWED_RULES);
+            ArrayList<RuleList> rules = new ArrayList<>(allowedRules);
+            rules.remove(null);
+            BinaryProofFormat.writeVarInt(recordData, rules.size());
+            for (RuleList r : rules)
+                BinaryProofFormat.writeVarInt(recordData, r.ordinal());
+            end();
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Writes the whole proof to a new checkpoint, forces it to disk, swaps it in and empties the journal
+     *
+     * @param saved true if the proof matches its save file
+     */
+    private void checkpoint(boolean saved) throws IOException {
+        if (channel == null)
+            return;
+        File tmp = new File(checkpointFile.getParentFile(), checkpointFile.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(fos));
+            data.write(CHECKPOINT_MAGIC);
+            data.writeByte(CHECKPOINT_VERSION);
+            data.writeLong(seq);
+            data.writeBoolean(saved);
+            data.writeUTF(saveFile == null ? "" : saveFile.getAbsolutePath());
+            BinaryProofFormat.write(proof, data, true, XmlResources.get().streamHash);
+            data.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.truncate(0);
+        sinceCheckpoint = 0;
+    }
+
+    /**
+     * Folds the journal into a new checkpoint after the proof has been saved. Call this once the save file has been
+     * written
+     *
+     * @param saveFile the file the proof was saved to
+     */
+    public synchronized void compact(File saveFile) throws IOException {
+        this.saveFile = saveFile;
+        checkpoint(true);
+    }
+
+    /**
+     * @return the proof this journal records
+     */
+    public Proof getProof() {
+        return proof;
+    }
+
+    /**
+     * @return the file the proof was last saved to or null if it has never been saved
+     */
+    public synchronized File getSaveFile() {
+        return saveFile;
+    }
+
+    private void closeFile() throws IOException {
+        if (file == null)
+            return;
+        try {
+            if (lock != null)
+                lock.release();
+        } finally {
+            file.close();
+            file = null;
+            channel = null;
+            lock = null;
+        }
+    }
+
+    /**
+     * Detaches the journal from the proof and closes it, leaving its files to be recovered
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (proof.journal == this)
+            proof.journal = null;
+        closeFile();
+    }
+
+    /**
+     * Detaches the journal from the proof and removes its files. Called when the proof is closed without a crash
+     */
+    public synchronized void delete() {
+        try {
+            close();
+        } catch (IOException e) {
+            logger.error("Failed to close proof journal " + journalFile, e);
+        }
+        if (journalFile.exists() && !journalFile.delete())
+            logger.error("Failed to delete proof journal " + journalFile);
+        if (checkpointFile.exists() && !checkpointFile.delete())
+            logger.error("Failed to delete proof journal checkpoint " + checkpointFile);
+    }
+
+}
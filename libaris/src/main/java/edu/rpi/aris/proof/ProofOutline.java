@@ -0,0 +1,178 @@
+package edu.rpi.aris.proof;
+
+import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.ast.ParseCache;
+import edu.rpi.aris.rules.RuleList;
+
+import javax.xml.bind.DatatypeConverter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The parts of a proof needed to check which problem it belongs to: its premises, goals, allowed rules and the rules
+ * used by its steps. Proofs loaded by {@link SaveManager#loadProblem(java.io.InputStream, boolean)} have their outline
+ * read straight from the saved records, so checking a submission against a problem does not build any {@link Line}s.
+ * The outline also keeps the structure of every line so two proofs can be compared by {@link #getFingerprint()}
+ */
+public class ProofOutline {
+
+    private final List<String> premises;
+    private final List<String> goals;
+    private final Set<RuleList> allowedRules;
+    private final Set<RuleList> usedRules;
+    private final List<Step> steps;
+    private volatile String fingerprint;
+
+    private ProofOutline(List<String> premises, List<String> goals, Set<RuleList> allowedRules, Set<RuleList> usedRules, List<Step> steps) {
+        this.premises = Collections.unmodifiableList(premises);
+        this.goals = Collections.unmodifiableList(goals);
+        this.allowedRules = Collections.unmodifiableSet(allowedRules);
+        this.usedRules = Collections.unmodifiableSet(usedRules);
+        this.steps = steps;
+    }
+
+    static ProofOutline of(Proof proof) {
+        ArrayList<String> premises = new ArrayList<>();
+        for (int i = 0; i < proof.getNumPremises(); ++i)
+            premises.add(proof.getLine(i).getExpressionString());
+        ArrayList<String> goals = new ArrayList<>();
+        for (int i = 0; i < proof.getNumGoals(); ++i)
+            goals.add(proof.getGoal(i).getGoalString());
+        EnumSet<RuleList> used = EnumSet.noneOf(RuleList.class);
+        ArrayList<Step> steps = new ArrayList<>();
+        for (int i = 0; i < proof.getNumLines(); ++i) {
+            Line l = proof.getLine(i);
+            if (!l.isAssumption() && l.getSelectedRule() != null)
+                used.add(l.getSelectedRule());
+            TreeSet<Integer> linePremises = new TreeSet<>();
+            for (Line p : l.getPremises())
+                linePremises.add(p.getLineNum());
+            steps.add(new Step(l.getSubProofLevel(), l.isAssumption(), l.getExpressionString(), l.getSelectedRule(), linePremises,
+                    l.getSubProofLevel() > 0 ? new TreeSet<>(l.getConstants()) : null));
+        }
+        return new ProofOutline(premises, goals, new HashSet<>(proof.getAllowedRules()), used, steps);
+    }
+
+    static ProofOutline of(List<LineRecord> lines, List<String> goals, Collection<RuleList> allowedRules) {
+        ArrayList<String> premises = new ArrayList<>();
+        EnumSet<RuleList> used = EnumSet.noneOf(RuleList.class);
+        ArrayList<Step> steps = new ArrayList<>();
+        for (LineRecord record : lines) {
+            if (record.isPremise())
+                premises.add(record.getRaw());
+            else if (!record.isAssumption && record.getRule() != null)
+                used.add(record.getRule());
+            TreeSet<String> constants = null;
+            if (record.indent > 0 && record.constants != null)
+                Collections.addAll(constants = new TreeSet<>(), record.constants.split(","));
+            steps.add(new Step(record.indent, record.isAssumption, record.getRaw(), record.getRule(), new TreeSet<>(record.premises), constants));
+        }
+        HashSet<RuleList> allowed = new HashSet<>(allowedRules);
+        allowed.remove(null);
+        return new ProofOutline(premises, new ArrayList<>(goals), allowed, used, steps);
+    }
+
+    /**
+     * @return the expression strings of the premises in order
+     */
+    public List<String> getPremises() {
+        return premises;
+    }
+
+    /**
+     * @return the expression strings of the goals in order
+     */
+    public List<String> getGoals() {
+        return goals;
+    }
+
+    /**
+     * @return the rules allowed in the proof. An empty set means every rule is allowed
+     */
+    public Set<RuleList> getAllowedRules() {
+        return allowedRules;
+    }
+
+    /**
+     * @return the rules selected by at least one step of the proof
+     */
+    public Set<RuleList> getUsedRules() {
+        return usedRules;
+    }
+
+    /**
+     * Returns a hash of everything that decides how the proof is graded: the level, kind, expression, rule, premises and
+     * constants of every line, the goals and the allowed rules. Expressions are compared in their parsed form, so
+     * whitespace and redundant parentheses do not change the fingerprint. The authors and the save hash are left out, so
+     * structurally identical proofs saved by different students share a fingerprint
+     *
+     * @return the SHA-256 fingerprint as lowercase hex
+     */
+    public String getFingerprint() {
+        String f = fingerprint;
+        if (f != null)
+            return f;
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Step step : steps) {
+            sb.setLength(0);
+            sb.append(step.level).append(step.isAssumption ? 'A' : 'S').append(normalize(step.expression)).append('\0');
+            if (!step.isAssumption) {
+                sb.append(step.rule == null ? "" : step.rule.name()).append('\0');
+                sb.append(step.premises).append('\0');
+            }
+            if (step.constants != null && !step.constants.isEmpty())
+                sb.append(step.constants);
+            sb.append('\n');
+            digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        // the grade does not depend on the order of the goals
+        ArrayList<String> normalizedGoals = new ArrayList<>();
+        for (String goal : goals)
+            if (goal != null && goal.trim().length() > 0)
+                normalizedGoals.add(normalize(goal));
+        Collections.sort(normalizedGoals);
+        for (String goal : normalizedGoals)
+            digest.update(("G" + goal + "\n").getBytes(StandardCharsets.UTF_8));
+        // steps are checked against the proof's own allowed rules. No restriction is the same as allowing every rule
+        EnumSet<RuleList> allowed = allowedRules.isEmpty() ? EnumSet.allOf(RuleList.class) : EnumSet.copyOf(allowedRules);
+        digest.update(("R" + allowed + "\n").getBytes(StandardCharsets.UTF_8));
+        return fingerprint = DatatypeConverter.printHexBinary(digest.digest()).toLowerCase();
+    }
+
+    private static String normalize(String expression) {
+        if (expression == null)
+            return "";
+        Expression e = ParseCache.parse(expression);
+        // unparsable expressions are kept as typed, marked so they can never match a parsed expression
+        return e == null ? "!" + expression.trim() : e.toDebugString();
+    }
+
+    private static class Step {
+
+        private final int level;
+        private final boolean isAssumption;
+        private final String expression;
+        private final RuleList rule;
+        private final TreeSet<Integer> premises;
+        private final TreeSet<String> constants;
+
+        private Step(int level, boolean isAssumption, String expression, RuleList rule, TreeSet<Integer> premises, TreeSet<String> constants) {
+            this.level = level;
+            this.isAssumption = isAssumption;
+            this.expression = expression;
+            this.rule = rule;
+            this.premises = premises;
+            this.constants = constants;
+        }
+
+    }
+
+}
@@ -1,13 +1,37 @@
 package edu.rpi.aris.proof;
 
 import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.util.NativeCleaner;
 
-public class RustProof {
+/**
+ * A handle to a proof held in native memory. The native proof is freed when the handle is closed or, failing that,
+ * once the handle has been garbage collected. A closed handle must not be used again
+ */
+public class RustProof implements AutoCloseable {
     static { edu.rpi.aris.util.SharedObjectLoader.loadLib("libaris"); }
 
+    public static final String NATIVE_TYPE = "RustProof";
+
     protected long pointerToRustHeap;
-    protected RustProof(long p) { pointerToRustHeap = p; }
-    // TODO: native finalizer
+    private final NativeCleaner.Cleanable cleanable;
+
+    protected RustProof(long p) {
+        pointerToRustHeap = p;
+        cleanable = NativeCleaner.getInstance().register(this, NATIVE_TYPE, p, RustProof::free);
+    }
+
+    private static native void free(long pointer);
+
+    @Override
+    public synchronized void close() {
+        pointerToRustHeap = 0;
+        cleanable.clean();
+    }
+
+    public synchronized boolean isClosed() {
+        return cleanable.isCleaned();
+    }
+
     public static native RustProof createProof();
     public static native RustProof fromXml(String xml);
 
@@ -17,4 +41,10 @@ public class RustProof {
     public native String checkRuleAtLine(long index);
     public native void setExpressionString(long index, String expressionString);
     public native void moveCursor(long index);
+    public native void removeLine(long index);
+    public native void addPremise(long index, long premiseIndex);
+    public native void removePremise(long index, long premiseIndex);
+    public native void setRule(long index, String ruleName);
+    /** Removes every line so the native proof can be reused by {@link RustProofPool} */
+    public native void clear();
 }
@@ -0,0 +1,99 @@
+package edu.rpi.aris.proof;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of cleared native proofs. Proofs created only to be verified or graded and then thrown away take their
+ * native proof from here and give it back when they are closed instead of allocating and freeing one each time. Proofs
+ * released while the pool is full are freed immediately
+ */
+public class RustProofPool {
+
+    public static final int DEFAULT_MAX_SIZE = 16;
+    private static final Logger logger = LogManager.getLogger(RustProofPool.class);
+    private static final RustProofPool instance = new RustProofPool(DEFAULT_MAX_SIZE);
+
+    private final ArrayDeque<RustProof> pool = new ArrayDeque<>();
+    private final int maxSize;
+    // cleared if the loaded native library predates RustProof.clear, in which case released proofs are freed instead
+    private volatile boolean clearAvailable = true;
+
+    RustProofPool(int maxSize) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("The pool size must not be negative");
+        this.maxSize = maxSize;
+    }
+
+    public static RustProofPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return an empty native proof, reused from the pool if one is available
+     */
+    public RustProof acquire() {
+        RustProof p;
+        synchronized (pool) {
+            p = pool.poll();
+        }
+        return p == null ? RustProof.createProof() : p;
+    }
+
+    /**
+     * Clears the given proof and returns it to the pool, or frees it if the pool is full or it could not be cleared
+     *
+     * @param proof the proof to release
+     */
+    public void release(RustProof proof) {
+        if (proof == null || proof.isClosed())
+            return;
+        if (!clearAvailable) {
+            proof.close();
+            return;
+        }
+        try {
+            proof.clear();
+        } catch (UnsatisfiedLinkError e) {
+            clearAvailable = false;
+            logger.warn("The native library cannot clear proofs, native proofs will not be reused", e);
+            proof.close();
+            return;
+        } catch (Throwable e) {
+            logger.error("Failed to clear native proof", e);
+            proof.close();
+            return;
+        }
+        synchronized (pool) {
+            if (pool.size() < maxSize) {
+                pool.push(proof);
+                return;
+            }
+        }
+        proof.close();
+    }
+
+    public int size() {
+        synchronized (pool) {
+            return pool.size();
+        }
+    }
+
+    /**
+     * Frees every proof held by the pool
+     */
+    public void clear() {
+        RustProof p;
+        while (true) {
+            synchronized (pool) {
+                p = pool.poll();
+            }
+            if (p == null)
+                return;
+            p.close();
+        }
+    }
+
+}
@@ -3,7 +3,7 @@ package edu.rpi.aris.proof;
 import edu.rpi.aris.LibAris;
 import edu.rpi.aris.assign.Problem;
 import edu.rpi.aris.assign.ProblemConverter;
-import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.ast.ParseCache;
 import edu.rpi.aris.rules.RuleList;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -14,22 +14,19 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
+
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXSource;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.stream.StreamResult;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -37,37 +34,23 @@ public class SaveManager implements ProblemConverter<LibAris> {
 
     public static final String FILE_EXTENSION = "bram";
     public static final String FITCH_FILE_EXT = "prf";
+    /**
+     * The compact encoding written by {@link BinaryProofFormat}, used between the assign client and server
+     */
+    public static final int FORMAT_BINARY = 1;
+    private static final String HASH_ELEMENT = "hash";
+    private static final byte[] HASH_MARKER = ("<" + HASH_ELEMENT + ">").getBytes(StandardCharsets.UTF_8);
+    // the hash element and the end of the document are expected to fit in this many bytes at the end of a file
+    private static final int HASH_TAIL_SIZE = 1024;
     private final SaveInfoListener listener;
-    private DocumentBuilder documentBuilder;
-    private Transformer transformer;
-    private XMLReader xmlReader;
-    private MessageDigest hash;
 
+    /**
+     * Holds no state other than the listener so one instance can be shared between threads. The parsers and digests
+     * come from {@link XmlResources} and belong to the calling thread
+     */
     public SaveManager(SaveInfoListener listener) {
         Objects.requireNonNull(listener);
         this.listener = listener;
-        try {
-            documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-            transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-            transformer = transformerFactory.newTransformer();
-            hash = MessageDigest.getInstance("SHA-256");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            // create a SAX parser factor to be used for parsing the XML
-            // we are using this instead of the default transformer to prevent xml xxe exploits
-            SAXParserFactory spf = SAXParserFactory.newInstance();
-            spf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            spf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-            spf.setFeature("http://xml.org/sax/features/external-general-entities", false);
-            spf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-            spf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            xmlReader = spf.newSAXParser().getXMLReader();
-        } catch (ParserConfigurationException | TransformerConfigurationException | NoSuchAlgorithmException | SAXException e) {
-            throw new RuntimeException("Failed to initialize file saving", e);
-        }
     }
 
     private static Element getElementByTag(Element parent, String tag) throws IOException {
@@ -88,11 +71,11 @@ public class SaveManager implements ProblemConverter<LibAris> {
         return elements;
     }
 
-    public synchronized boolean saveProof(Proof proof, File file) throws IOException, TransformerException {
+    public boolean saveProof(Proof proof, File file) throws IOException, TransformerException {
         return saveProof(proof, file, true);
     }
 
-    public synchronized boolean saveProof(Proof proof, File file, boolean saveAuthors) throws IOException, TransformerException {
+    public boolean saveProof(Proof proof, File file, boolean saveAuthors) throws IOException, TransformerException {
         if (proof == null || file == null)
             return false;
         if (!file.exists())
@@ -101,162 +84,310 @@ public class SaveManager implements ProblemConverter<LibAris> {
         return saveProof(proof, new FileOutputStream(file), saveAuthors);
     }
 
-    public synchronized boolean saveProof(Proof proof, OutputStream out) throws TransformerException {
+    public boolean saveProof(Proof proof, OutputStream out) throws TransformerException {
         return saveProof(proof, out, true);
     }
 
-    public synchronized boolean saveProof(Proof proof, OutputStream out, boolean saveAuthors) throws TransformerException {
+    /**
+     * Writes the proof as a .bram file in a single pass. The bytes are hashed as they are written and the hash, which
+     * also covers the authors, is written as the last element of the file
+     */
+    public boolean saveProof(Proof proof, OutputStream out, boolean saveAuthors) throws TransformerException {
         if (proof == null || out == null)
             return false;
-        Document doc = documentBuilder.newDocument();
-        Element root = doc.createElement("bram");
-        doc.appendChild(root);
-
-        Element program = doc.createElement("program");
-        program.appendChild(doc.createTextNode(LibAris.NAME));
-        root.appendChild(program);
-
-        Element version = doc.createElement("version");
-        version.appendChild(doc.createTextNode(LibAris.VERSION));
-        root.appendChild(version);
-
-        ArrayList<Element> proofElements = new ArrayList<>();
-
-        createProofElement(proof, 0, doc, root, proofElements);
-
-        Element baseProof = proofElements.get(0);
-
-        for (int i = 0; i < proof.getNumGoals(); ++i) {
-            Goal g = proof.getGoal(i);
-            Element goal = doc.createElement("goal");
-            Element sen = doc.createElement("sen");
-            g.buildExpression();
-            sen.appendChild(doc.createTextNode(g.getExpression() == null ? "" : g.getExpression().toString()));
-            goal.appendChild(sen);
-            Element raw = doc.createElement("raw");
-            raw.appendChild(doc.createTextNode(g.getGoalString()));
-            goal.appendChild(raw);
-            baseProof.appendChild(goal);
-        }
-
-        Element metadata = doc.createElement("metadata");
-
-        if (saveAuthors)
-            for (String author : proof.getAuthors()) {
-                Element a = doc.createElement("author");
-                a.appendChild(doc.createTextNode(author));
-                metadata.appendChild(a);
-            }
-
-        for (RuleList rule : proof.getAllowedRules()) {
-            if (rule == null)
-                continue;
-            Element r = doc.createElement("allowed-rule");
-            r.appendChild(doc.createTextNode(rule.name()));
-            metadata.appendChild(r);
+        MessageDigest streamHash = XmlResources.get().streamHash;
+        try {
+            DigestOutputStream digestOut = new DigestOutputStream(out, streamHash);
+            streamHash.reset();
+            XMLStreamWriter w = XmlResources.get().outputFactory.createXMLStreamWriter(digestOut, "UTF-8");
+            w.writeStartDocument("UTF-8", "1.0");
+            newLine(w, 0);
+            w.writeStartElement("bram");
+            writeElement(w, 1, "program", LibAris.NAME);
+            writeElement(w, 1, "version", LibAris.VERSION);
+
+            newLine(w, 1);
+            w.writeStartElement("metadata");
+            if (saveAuthors)
+                for (String author : proof.getAuthors())
+                    writeElement(w, 2, "author", author);
+            for (RuleList rule : proof.getAllowedRules())
+                if (rule != null)
+                    writeElement(w, 2, "allowed-rule", rule.name());
+            newLine(w, 1);
+            w.writeEndElement();
+
+            ArrayList<ArrayList<Object>> proofElements = new ArrayList<>();
+            if (proof.getNumLines() > 0)
+                collectProofElement(proof, 0, proofElements);
+            else
+                proofElements.add(new ArrayList<>());
+            for (int id = 0; id < proofElements.size(); ++id)
+                writeProofElement(w, proof, id, proofElements.get(id));
+
+            newLine(w, 1);
+            w.flush();
+            digestOut.on(false);
+            ArrayList<String> authors = new ArrayList<>(proof.getAuthors());
+            Collections.sort(authors);
+            streamHash.update(StringUtils.join(authors, "").getBytes(StandardCharsets.UTF_8));
+            String hashStr = Base64.getEncoder().encodeToString(streamHash.digest());
+            w.writeStartElement(HASH_ELEMENT);
+            w.writeCharacters(hashStr);
+            w.writeEndElement();
+            newLine(w, 0);
+            w.writeEndElement();
+            newLine(w, 0);
+            w.writeEndDocument();
+            w.flush();
+            w.close();
+            out.flush();
+        } catch (XMLStreamException | IOException e) {
+            throw new TransformerException("Failed to save proof", e);
         }
-
-        root.insertBefore(metadata, baseProof);
-
-        DOMSource src = new DOMSource(doc);
-        StringWriter writer = new StringWriter();
-        StreamResult result = new StreamResult(writer);
-        transformer.transform(src, result);
-
-        String hash = computeHash(writer.toString(), proof.getAuthors());
-        Element hashElement = doc.createElement("hash");
-        hashElement.appendChild(doc.createTextNode(hash));
-        metadata.appendChild(hashElement);
-
-        result = new StreamResult(out);
-        transformer.transform(src, result);
         proof.saved();
         return true;
     }
 
-    private synchronized Pair<Integer, Integer> createProofElement(Proof proof, int lineNum, Document doc, Element root, ArrayList<Element> proofElements) {
-        Element prf = doc.createElement("proof");
-        int id = proofElements.size();
-        prf.setAttribute("id", String.valueOf(id));
-        root.appendChild(prf);
-        proofElements.add(prf);
+    private static void newLine(XMLStreamWriter w, int depth) throws XMLStreamException {
+        w.writeCharacters("\n");
+        for (int i = 0; i < depth; ++i)
+            w.writeCharacters("  ");
+    }
+
+    private static void writeElement(XMLStreamWriter w, int depth, String name, String text) throws XMLStreamException {
+        newLine(w, depth);
+        w.writeStartElement(name);
+        w.writeCharacters(text == null ? "" : text);
+        w.writeEndElement();
+    }
+
+    /**
+     * Splits the lines into proof elements the same way they are laid out in the file. Each element is a list of the
+     * {@link Line}s it holds and, for each subproof it contains, a pair of the subproof's id and its first line. Ids are
+     * assigned in the order the subproofs appear so the elements can be written one after another
+     *
+     * @return the line number after the last line of the element
+     */
+    private int collectProofElement(Proof proof, int lineNum, ArrayList<ArrayList<Object>> proofElements) {
+        ArrayList<Object> items = new ArrayList<>();
+        proofElements.add(items);
         int indent = proof.getLine(lineNum).getSubProofLevel();
         int allowedAssumptions = lineNum == 0 ? proof.getNumPremises() : 1;
         for (int i = lineNum; i < proof.getNumLines(); ++i) {
             Line line = proof.getLine(i);
             if (line.getSubProofLevel() < indent || (line.getSubProofLevel() == indent && allowedAssumptions == 0 && line.isAssumption()))
                 break;
-            if (line.isAssumption()) {
-                if (allowedAssumptions == 0) {
-                    Element step = doc.createElement("step");
-                    step.setAttribute("linenum", String.valueOf(line.getLineNum()));
-                    Element rule = doc.createElement("rule");
-                    rule.appendChild(doc.createTextNode("SUBPROOF"));
-                    step.appendChild(rule);
-                    Pair<Integer, Integer> subproofResult = createProofElement(proof, line.getLineNum(), doc, root, proofElements);
-                    Element premise = doc.createElement("premise");
-                    premise.appendChild(doc.createTextNode(String.valueOf(subproofResult.getKey())));
-                    step.appendChild(premise);
-                    prf.appendChild(step);
-                    lineNum = subproofResult.getValue();
-                    i = lineNum - 1;
-                } else {
-                    --allowedAssumptions;
-                    Element assumption = doc.createElement("assumption");
-                    assumption.setAttribute("linenum", String.valueOf(line.getLineNum()));
-                    Element sen = doc.createElement("sen");
-                    line.buildExpression();
-                    sen.appendChild(doc.createTextNode(line.getExpression() == null ? "" : line.getExpression().toString()));
-                    assumption.appendChild(sen);
-                    Element raw = doc.createElement("raw");
-                    raw.appendChild(doc.createTextNode(line.getExpressionString()));
-                    assumption.appendChild(raw);
-                    TreeSet<String> constants = line.getConstants();
-                    if (constants.size() > 0) {
-                        Element c = doc.createElement("constants");
-                        c.appendChild(doc.createTextNode(StringUtils.join(constants, ",")));
-                        assumption.appendChild(c);
-                    }
-                    prf.appendChild(assumption);
-                    ++lineNum;
-                }
+            if (line.isAssumption() && allowedAssumptions == 0) {
+                items.add(new ImmutablePair<>(proofElements.size(), line));
+                lineNum = collectProofElement(proof, line.getLineNum(), proofElements);
+                i = lineNum - 1;
             } else {
-                allowedAssumptions = 0;
-                Element step = doc.createElement("step");
-                step.setAttribute("linenum", String.valueOf(line.getLineNum()));
-                Element sen = doc.createElement("sen");
-                line.buildExpression();
-                sen.appendChild(doc.createTextNode(line.getExpression() == null ? "" : line.getExpression().toString()));
-                step.appendChild(sen);
-                Element raw = doc.createElement("raw");
-                raw.appendChild(doc.createTextNode(line.getExpressionString()));
-                step.appendChild(raw);
-                Element rule = doc.createElement("rule");
-                rule.appendChild(doc.createTextNode(line.getSelectedRule() == null ? "" : line.getSelectedRule().name()));
-                step.appendChild(rule);
-                for (Line p : line.getPremises()) {
-                    Element premise = doc.createElement("premise");
-                    premise.appendChild(doc.createTextNode(String.valueOf(p.getLineNum())));
-                    step.appendChild(premise);
-                }
-                prf.appendChild(step);
+                if (line.isAssumption())
+                    --allowedAssumptions;
+                else
+                    allowedAssumptions = 0;
+                items.add(line);
                 ++lineNum;
             }
         }
-        return new ImmutablePair<>(id, lineNum);
+        return lineNum;
+    }
+
+    private void writeProofElement(XMLStreamWriter w, Proof proof, int id, ArrayList<Object> items) throws XMLStreamException {
+        newLine(w, 1);
+        w.writeStartElement("proof");
+        w.writeAttribute("id", String.valueOf(id));
+        for (Object item : items) {
+            if (item instanceof Pair) {
+                Pair<?, ?> subproof = (Pair<?, ?>) item;
+                newLine(w, 2);
+                w.writeStartElement("step");
+                w.writeAttribute("linenum", String.valueOf(((Line) subproof.getValue()).getLineNum()));
+                writeElement(w, 3, "rule", "SUBPROOF");
+                writeElement(w, 3, "premise", String.valueOf(subproof.getKey()));
+                newLine(w, 2);
+                w.writeEndElement();
+                continue;
+            }
+            Line line = (Line) item;
+            newLine(w, 2);
+            w.writeStartElement(line.isAssumption() ? "assumption" : "step");
+            w.writeAttribute("linenum", String.valueOf(line.getLineNum()));
+            line.buildExpression();
+            writeElement(w, 3, "sen", line.getExpression() == null ? "" : line.getExpression().toString());
+            writeElement(w, 3, "raw", line.getExpressionString());
+            if (line.isAssumption()) {
+                TreeSet<String> constants = line.getConstants();
+                if (constants.size() > 0)
+                    writeElement(w, 3, "constants", StringUtils.join(constants, ","));
+            } else {
+                writeElement(w, 3, "rule", line.getSelectedRule() == null ? "" : line.getSelectedRule().name());
+                for (Line p : line.getPremises())
+                    writeElement(w, 3, "premise", String.valueOf(p.getLineNum()));
+            }
+            newLine(w, 2);
+            w.writeEndElement();
+        }
+        if (id == 0) {
+            for (int i = 0; i < proof.getNumGoals(); ++i) {
+                Goal g = proof.getGoal(i);
+                g.buildExpression();
+                newLine(w, 2);
+                w.writeStartElement("goal");
+                writeElement(w, 3, "sen", g.getExpression() == null ? "" : g.getExpression().toString());
+                writeElement(w, 3, "raw", g.getGoalString());
+                newLine(w, 2);
+                w.writeEndElement();
+            }
+        }
+        newLine(w, 1);
+        w.writeEndElement();
     }
 
-    public synchronized Proof loadProof(File file, String author) throws IOException, TransformerException {
+    public Proof loadProof(File file, String author) throws IOException, TransformerException {
         if (file == null || !file.exists())
             return null;
         try (FileInputStream fis = new FileInputStream(file)) {
-            return loadProof(fis, file.getName(), author, true);
+            ArisProofProblem problem = readProof(fis, file.getName(), author, true);
+            return problem == null ? null : problem.getProof();
         }
     }
 
-    private synchronized Proof loadProof(InputStream in, String name, String author, boolean verifyIntegrity) throws TransformerException, IOException {
+    /**
+     * Reads a proof with a pull parser into flat records instead of a DOM, checking the hash at the end of the file as
+     * it is read. The integrity check and listener callbacks happen here but the {@link Proof} itself is only built
+     * when {@link ArisProofProblem#getProof()} is first called, so callers that only need the {@link ProofOutline}
+     * never create any lines. Files with the hash in their metadata are handed to
+     * {@link #loadLegacyProof(InputStream, String, String, boolean)}, replaying the few bytes already read
+     */
+    private ArisProofProblem readProof(InputStream in, String name, String author, boolean verifyIntegrity) throws TransformerException, IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 4);
+        if (BinaryProofFormat.isBinary(pushback))
+            return readBinaryProof(pushback, name, author, verifyIntegrity);
+        in = pushback;
+        RecordingInputStream recording = new RecordingInputStream(in);
+        MessageDigest streamHash = XmlResources.get().streamHash;
+        streamHash.reset();
+        TailDigestInputStream digestIn = new TailDigestInputStream(recording, streamHash, HASH_TAIL_SIZE);
+        BramStreamReader bram;
+        try {
+            XMLStreamReader reader = XmlResources.get().inputFactory.createXMLStreamReader(digestIn);
+            bram = new BramStreamReader(reader);
+            bram.read(recording::stopRecording);
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new TransformerException("Failed to read proof", e);
+        }
+        if (bram.isLegacyHash()) {
+            Proof proof = loadLegacyProof(new SequenceInputStream(new ByteArrayInputStream(recording.getRecorded()), in), name, author, verifyIntegrity);
+            return proof == null ? null : new ArisProofProblem(proof);
+        }
+        recording.stopRecording();
+
+        HashSet<String> authors = new HashSet<>();
+        Set<RuleList> allowedRules;
+        if (!bram.program.equals(LibAris.NAME)) {
+            if (!listener.notArisFile(name, bram.program, bram.version))
+                return null;
+            authors.add("UNKNOWN");
+            allowedRules = Collections.emptySet();
+        } else {
+            if (!bram.hasMetadata)
+                throw new IOException("Invalid file format");
+            if (bram.hash == null)
+                authors.add("UNKNOWN");
+            else {
+                authors.addAll(bram.authors);
+                if (verifyIntegrity && !(digestIn.digestBefore(HASH_MARKER) && verifyStreamHash(bram.hash, authors))) {
+                    listener.integrityCheckFailed(name);
+                    authors.clear();
+                    authors.add("UNKNOWN");
+                }
+            }
+            if (!verifyIntegrity)
+                authors.clear();
+            allowedRules = bram.allowedRules.stream().map(rule -> {
+                try {
+                    return RuleList.valueOf(rule);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }).collect(Collectors.toSet());
+        }
+        ArrayList<String> goals = new ArrayList<>();
+        for (String[] goal : bram.goals)
+            goals.add(goal[1] == null ? ParseCache.parse(goal[0]).toDebugString() : goal[1]);
+        return lazyProof(authors, author, allowedRules, bram.lines, goals);
+    }
+
+    private ArisProofProblem readBinaryProof(InputStream in, String name, String author, boolean verifyIntegrity) throws IOException {
+        BinaryProofFormat.Decoded decoded = BinaryProofFormat.read(in, XmlResources.get().streamHash);
+        HashSet<String> authors = new HashSet<>(decoded.authors);
+        if (verifyIntegrity && !decoded.hashValid) {
+            listener.integrityCheckFailed(name);
+            authors.clear();
+            authors.add("UNKNOWN");
+        }
+        if (!verifyIntegrity)
+            authors.clear();
+        return lazyProof(authors, author, decoded.allowedRules, decoded.lines, decoded.goals);
+    }
+
+    private static ArisProofProblem lazyProof(Set<String> authors, String author, Set<RuleList> allowedRules, List<LineRecord> lines, List<String> goals) throws IOException {
+        checkLines(lines);
+        return new ArisProofProblem(ProofOutline.of(lines, goals, allowedRules), () -> {
+            Proof proof = new Proof(authors, author, allowedRules);
+            addLines(proof, lines, goals);
+            proof.saved();
+            return proof;
+        });
+    }
+
+    /**
+     * Checks the line structure up front so a problem that loads successfully can always be built later
+     */
+    static void checkLines(List<LineRecord> lines) throws IOException {
+        int numPremises = 0;
+        for (int i = 0; i < lines.size(); ++i) {
+            LineRecord record = lines.get(i);
+            // premises have to come before every other line
+            if (record.isPremise() && i != numPremises++)
+                throw new IOException("Non sequential linenum tags in file");
+            if (!record.isAssumption)
+                for (int p : record.premises)
+                    if (p < 0 || p >= i)
+                        throw new IOException("Invalid premise id in step");
+        }
+    }
+
+    static void addLines(Proof proof, List<LineRecord> lines, List<String> goals) {
+        for (int i = 0; i < lines.size(); ++i) {
+            LineRecord record = lines.get(i);
+            Line line = record.isPremise() ? proof.addPremise() : proof.addLine(i, record.isAssumption, record.indent);
+            line.setExpressionString(record.getRaw(), true);
+            if (record.isAssumption) {
+                if (record.indent > 0 && record.constants != null)
+                    Collections.addAll(line.getConstants(), record.constants.split(","));
+            } else {
+                line.setSelectedRule(record.getRule());
+                for (int p : record.premises)
+                    proof.setPremise(i, proof.getLine(p), true);
+            }
+        }
+        for (String goal : goals)
+            proof.addGoal(proof.getNumGoals()).setGoalString(goal, true);
+    }
+
+    /**
+     * Loads files saved before the hash was moved to the end of the file. Their hash covers the document as the
+     * Transformer re-serializes it so they are loaded into a DOM
+     */
+    private Proof loadLegacyProof(InputStream in, String name, String author, boolean verifyIntegrity) throws TransformerException, IOException {
+        XmlResources resources = XmlResources.get();
+        Transformer transformer = resources.transformer;
         // using the SAXSource so we can specify an xml reader that prevents xxe exploits
-        SAXSource src = new SAXSource(xmlReader, new InputSource(in));
+        SAXSource src = new SAXSource(resources.xmlReader, new InputSource(in));
         DOMResult result = new DOMResult();
         transformer.transform(src, result);
 
@@ -282,7 +413,7 @@ public class SaveManager implements ProblemConverter<LibAris> {
         } else {
             Element metadata = getElementByTag(root, "metadata");
             try {
-                Element hashElement = getElementByTag(metadata, "hash");
+                Element hashElement = getElementByTag(metadata, HASH_ELEMENT);
                 authors.addAll(getElementsByTag(metadata, "author").stream().map(Node::getTextContent).collect(Collectors.toList()));
                 metadata.removeChild(hashElement);
                 DOMSource s = new DOMSource(doc);
@@ -342,7 +473,7 @@ public class SaveManager implements ProblemConverter<LibAris> {
             } catch (IOException e) {
                 String sen = getElementByTag(g, "sen").getTextContent();
 //                    try {
-                raw = Expression.parseViaRust(sen).toDebugString();//new Expression(sen).toLogicString();
+                raw = ParseCache.parse(sen).toDebugString();//new Expression(sen).toLogicString();
 //                    } catch (ExpressionParseException e1) {
 //                        throw new IOException("Invalid sentence in goal element");
 //                    }
@@ -354,7 +485,7 @@ public class SaveManager implements ProblemConverter<LibAris> {
         return proof;
     }
 
-    private synchronized int readProofElement(Proof proof, ArrayList<Element> proofElements, int elementId, int indent, int lineNum) throws IOException {
+    private int readProofElement(Proof proof, ArrayList<Element> proofElements, int elementId, int indent, int lineNum) throws IOException {
         Element element = proofElements.get(elementId);
         ArrayList<Element> assumptions = getElementsByTag(element, "assumption");
         assumptions.sort((e1, e2) -> {
@@ -381,7 +512,7 @@ public class SaveManager implements ProblemConverter<LibAris> {
             } catch (IOException e) {
                 String sen = getElementByTag(assumption, "sen").getTextContent();
 //                try {
-                raw = Expression.parseViaRust(sen).toDebugString();//new Expression(sen).toLogicString();
+                raw = ParseCache.parse(sen).toDebugString();//new Expression(sen).toLogicString();
 //                } catch (ExpressionParseException e1) {
 //                    throw new IOException("Invalid sentence in proof element " + elementId);
 //                }
@@ -436,7 +567,7 @@ public class SaveManager implements ProblemConverter<LibAris> {
                 } catch (IOException e) {
                     String sen = getElementByTag(step, "sen").getTextContent();
 //                    try {
-                    raw = Expression.parseViaRust(sen).toDebugString();//new Expression(sen).toLogicString();
+                    raw = ParseCache.parse(sen).toDebugString();//new Expression(sen).toLogicString();
 //                    } catch (ExpressionParseException e1) {
 //                        throw new IOException("Invalid sentence in proof element " + elementId);
 //                    }
@@ -467,18 +598,63 @@ public class SaveManager implements ProblemConverter<LibAris> {
         return lineNum;
     }
 
-    private synchronized String computeHash(String xml, Collection<String> authorCollection) {
+    private String computeHash(String xml, Collection<String> authorCollection) {
         ArrayList<String> authors = new ArrayList<>(authorCollection);
         Collections.sort(authors);
+        MessageDigest hash = XmlResources.get().hash;
         String hashStr = Base64.getEncoder().encodeToString(hash.digest((xml + StringUtils.join(authors, "")).getBytes()));
         hash.reset();
         return hashStr;
     }
 
+    private boolean verifyStreamHash(String expected, Collection<String> authorCollection) {
+        ArrayList<String> authors = new ArrayList<>(authorCollection);
+        Collections.sort(authors);
+        MessageDigest streamHash = XmlResources.get().streamHash;
+        streamHash.update(StringUtils.join(authors, "").getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(streamHash.digest()).equals(expected.trim());
+    }
+
     private boolean verifyHash(String xml, String hash, Collection<String> authors) {
         return computeHash(xml, authors).equals(hash);
     }
 
+    /**
+     * Keeps a copy of everything read through it until recording is stopped, so the start of a file can be replayed
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+
+        private ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0 && recorded != null)
+                recorded.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0 && recorded != null)
+                recorded.write(b, off, read);
+            return read;
+        }
+
+        void stopRecording() {
+            recorded = null;
+        }
+
+        byte[] getRecorded() {
+            return recorded == null ? new byte[0] : recorded.toByteArray();
+        }
+    }
+
     @Override
     public void convertProblem(@NotNull Problem<LibAris> problem, @NotNull OutputStream out, boolean isProblemSolution) throws IOException {
         try {
@@ -488,11 +664,32 @@ public class SaveManager implements ProblemConverter<LibAris> {
         }
     }
 
+    @Override
+    public void convertProblem(@NotNull Problem<LibAris> problem, @NotNull OutputStream out, boolean isProblemSolution, int format) throws IOException {
+        switch (format) {
+            case FORMAT_DEFAULT:
+                convertProblem(problem, out, isProblemSolution);
+                break;
+            case FORMAT_BINARY:
+                BinaryProofFormat.write(((ArisProofProblem) problem).getProof(), out, isProblemSolution, XmlResources.get().streamHash);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported problem format: " + format);
+        }
+    }
+
+    @NotNull
+    @Override
+    public int[] getSupportedFormats() {
+        return new int[]{FORMAT_DEFAULT, FORMAT_BINARY};
+    }
+
     @NotNull
     @Override
     public ArisProofProblem loadProblem(@NotNull InputStream in, boolean isProblemSolution) throws IOException {
         try {
-            return new ArisProofProblem(loadProof(in, "Aris Assign", LibAris.getInstance().getProperties().get("username"), isProblemSolution));
+            ArisProofProblem problem = readProof(in, "Aris Assign", LibAris.getInstance().getProperties().get("username"), isProblemSolution);
+            return problem == null ? new ArisProofProblem(null) : problem;
         } catch (TransformerException e) {
             throw new IOException("Failed to load aris proof", e);
         }
@@ -0,0 +1,113 @@
+package edu.rpi.aris.proof;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Feeds everything read through it into a {@link MessageDigest} except for the last few bytes, which are held back
+ * until the end of the stream. Once the stream has been read {@link #digestBefore(byte[])} adds the held back bytes
+ * up to the last occurrence of a marker, so a hash written at the end of a file can be checked against everything
+ * before it without holding the file in memory
+ */
+class TailDigestInputStream extends FilterInputStream {
+
+    private final MessageDigest digest;
+    private final byte[] tail;
+    private int tailLength = 0;
+
+    TailDigestInputStream(InputStream in, MessageDigest digest, int tailSize) {
+        super(in);
+        this.digest = digest;
+        tail = new byte[tailSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0)
+            append(new byte[]{(byte) b}, 0, 1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0)
+            append(b, off, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes still have to be digested
+        byte[] buf = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        int read;
+        while (skipped < n && (read = read(buf, 0, (int) Math.min(buf.length, n - skipped))) > 0)
+            skipped += read;
+        return skipped;
+    }
+
+    /**
+     * Does not close the underlying stream. XML parsers close their input once the document ends, which would stop
+     * {@link #digestBefore(byte[])} from reading anything after it; the stream is closed by whoever opened it
+     */
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void append(byte[] b, int off, int len) {
+        int overflow = tailLength + len - tail.length;
+        if (overflow > 0) {
+            int fromTail = Math.min(overflow, tailLength);
+            digest.update(tail, 0, fromTail);
+            System.arraycopy(tail, fromTail, tail, 0, tailLength - fromTail);
+            tailLength -= fromTail;
+            int fromNew = overflow - fromTail;
+            digest.update(b, off, fromNew);
+            off += fromNew;
+            len -= fromNew;
+        }
+        System.arraycopy(b, off, tail, tailLength, len);
+        tailLength += len;
+    }
+
+    /**
+     * Reads the rest of the stream and digests the held back bytes that come before the last occurrence of the marker
+     *
+     * @param marker the bytes the hashed content ends before
+     * @return false if the marker is not within the held back bytes, in which case nothing more is digested
+     */
+    boolean digestBefore(byte[] marker) throws IOException {
+        byte[] buf = new byte[1024];
+        //noinspection StatementWithEmptyBody
+        while (read(buf, 0, buf.length) >= 0) ;
+        for (int i = tailLength - marker.length; i >= 0; --i) {
+            boolean match = true;
+            for (int j = 0; j < marker.length && match; ++j)
+                match = tail[i + j] == marker[j];
+            if (match) {
+                digest.update(tail, 0, i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
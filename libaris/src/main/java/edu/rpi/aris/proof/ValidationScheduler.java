@@ -0,0 +1,175 @@
+package edu.rpi.aris.proof;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Debounces the validation of {@link Line}s and {@link Goal}s while they are being edited. Scheduling a task for a key
+ * replaces any task still pending for that key and restarts its delay, so a burst of keystrokes results in a single
+ * validation. Due tasks are collected by a single timer thread and run in batches on a small bounded worker pool
+ * instead of each line and goal creating a {@link java.util.Timer} thread of its own
+ */
+public class ValidationScheduler {
+
+    public static final long DEFAULT_DELAY = 1000;
+    private static final Logger logger = LogManager.getLogger(ValidationScheduler.class);
+    private static final ValidationScheduler instance = new ValidationScheduler(DEFAULT_DELAY, Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+
+    private final long delay;
+    private final int batches;
+    // keys are compared by identity since Line and Goal override equals to compare their expressions
+    private final IdentityHashMap<Object, PendingTask> pending = new IdentityHashMap<>();
+    private final Set<Future<?>> running = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    private ScheduledFuture<?> drain = null;
+    private long drainTime = Long.MAX_VALUE;
+
+    ValidationScheduler(long delay, int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Threads must be greater than 0");
+        this.delay = delay;
+        this.batches = threads;
+        timer = Executors.newSingleThreadScheduledExecutor(threadFactory("Validation timer"));
+        workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory("Validation worker"));
+        ((ThreadPoolExecutor) workers).allowCoreThreadTimeOut(true);
+    }
+
+    public static ValidationScheduler getInstance() {
+        return instance;
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger threadNum = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + " " + threadNum.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Schedules the given task to run once the delay has passed, replacing any task still pending for the same key
+     *
+     * @param key  the object being validated
+     * @param task the validation to run
+     */
+    public synchronized void schedule(Object key, Runnable task) {
+        long time = System.currentTimeMillis() + delay;
+        pending.put(key, new PendingTask(task, time));
+        scheduleDrain(time);
+    }
+
+    /**
+     * Cancels the task pending for the given key if there is one. A task that has already started is not interrupted
+     *
+     * @param key the object being validated
+     * @return true if a pending task was removed
+     */
+    public synchronized boolean cancel(Object key) {
+        return pending.remove(key) != null;
+    }
+
+    public synchronized boolean isPending(Object key) {
+        return pending.containsKey(key);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Runs every pending task immediately and waits for them, and for any batch already running, to finish. This should
+     * be called before saving and from tests that need the validation results. It must not be called from a validation
+     * task or while holding the lock of a {@link Line} or {@link Goal}
+     */
+    public void flush() {
+        submit(takeDue(Long.MAX_VALUE));
+        for (Future<?> future : new ArrayList<>(running)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger.error("Validation batch failed", e.getCause());
+            }
+        }
+    }
+
+    private void scheduleDrain(long time) {
+        if (drain != null && drainTime <= time)
+            return;
+        if (drain != null)
+            drain.cancel(false);
+        drainTime = time;
+        drain = timer.schedule(this::drainDue, Math.max(0, time - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void drainDue() {
+        submit(takeDue(System.currentTimeMillis()));
+    }
+
+    private synchronized ArrayList<Runnable> takeDue(long now) {
+        ArrayList<Runnable> due = new ArrayList<>();
+        long next = Long.MAX_VALUE;
+        Iterator<PendingTask> it = pending.values().iterator();
+        while (it.hasNext()) {
+            PendingTask p = it.next();
+            if (p.time <= now) {
+                due.add(p.task);
+                it.remove();
+            } else
+                next = Math.min(next, p.time);
+        }
+        if (drain != null)
+            drain.cancel(false);
+        drain = null;
+        drainTime = Long.MAX_VALUE;
+        if (next != Long.MAX_VALUE)
+            scheduleDrain(next);
+        return due;
+    }
+
+    private void submit(ArrayList<Runnable> due) {
+        if (due.isEmpty())
+            return;
+        int size = (due.size() + batches - 1) / batches;
+        for (int i = 0; i < due.size(); i += size) {
+            List<Runnable> batch = due.subList(i, Math.min(due.size(), i + size));
+            FutureTask<Void> future = new FutureTask<>(() -> {
+                for (Runnable r : batch) {
+                    try {
+                        r.run();
+                    } catch (Exception e) {
+                        logger.error("Validation task failed", e);
+                    }
+                }
+            }, null);
+            running.add(future);
+            workers.execute(() -> {
+                try {
+                    future.run();
+                } finally {
+                    running.remove(future);
+                }
+            });
+        }
+    }
+
+    private static class PendingTask {
+
+        private final Runnable task;
+        private final long time;
+
+        PendingTask(Runnable task, long time) {
+            this.task = task;
+            this.time = time;
+        }
+    }
+
+}
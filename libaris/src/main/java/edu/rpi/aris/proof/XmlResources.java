@@ -0,0 +1,73 @@
+package edu.rpi.aris.proof;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The parsers, transformer and digests used by {@link SaveManager}. None of these are safe to share between threads so
+ * each thread gets its own set the first time it saves or loads a proof and reuses it from then on. This lets
+ * {@link SaveManager} be shared without locking and avoids looking up the JAXP factories for every proof
+ */
+class XmlResources {
+
+    private static final ThreadLocal<XmlResources> resources = ThreadLocal.withInitial(XmlResources::new);
+
+    final XMLInputFactory inputFactory;
+    final XMLOutputFactory outputFactory;
+    // the identity transformer used by the legacy loader. Files saved before the hash was moved to the end of the
+    // file are hashed over this transformer's output, so it is kept as the plain identity transformer
+    final Transformer transformer;
+    final XMLReader xmlReader;
+    final MessageDigest hash;
+    final MessageDigest streamHash;
+
+    private XmlResources() {
+        try {
+            TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            transformerFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+            transformer = transformerFactory.newTransformer();
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+            hash = MessageDigest.getInstance("SHA-256");
+            streamHash = MessageDigest.getInstance("SHA-256");
+            outputFactory = XMLOutputFactory.newInstance();
+            // the pull parser gets the same xxe protections as the xml reader below
+            inputFactory = XMLInputFactory.newInstance();
+            inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            // create a SAX parser factor to be used for parsing the XML
+            // we are using this instead of the default transformer to prevent xml xxe exploits
+            SAXParserFactory spf = SAXParserFactory.newInstance();
+            spf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            spf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            spf.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            spf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            spf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            xmlReader = spf.newSAXParser().getXMLReader();
+        } catch (ParserConfigurationException | TransformerConfigurationException | NoSuchAlgorithmException | SAXException e) {
+            throw new RuntimeException("Failed to initialize file saving", e);
+        }
+    }
+
+    /**
+     * @return the resources belonging to the current thread
+     */
+    static XmlResources get() {
+        return resources.get();
+    }
+
+}
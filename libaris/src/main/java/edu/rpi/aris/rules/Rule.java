@@ -1,16 +1,37 @@
 package edu.rpi.aris.rules;
 
 import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.proof.Claim;
 import edu.rpi.aris.proof.Premise;
+import edu.rpi.aris.util.NativeCleaner;
 
 import java.util.ArrayList;
 
-public class Rule {
+/**
+ * A handle to a rule held in native memory, freed when the handle is closed or garbage collected. The rules held by
+ * {@link RuleList} are shared for the lifetime of the process and must not be closed
+ */
+public class Rule implements AutoCloseable {
     static { edu.rpi.aris.util.SharedObjectLoader.loadLib("libaris"); }
 
+    public static final String NATIVE_TYPE = "Rule";
+
     protected long pointerToRustHeap;
-    protected Rule(long p) { pointerToRustHeap = p; }
-    // TODO: native finalizer
+    private final NativeCleaner.Cleanable cleanable;
+
+    protected Rule(long p) {
+        pointerToRustHeap = p;
+        cleanable = NativeCleaner.getInstance().register(this, NATIVE_TYPE, p, Rule::free);
+    }
+
+    private static native void free(long pointer);
+
+    @Override
+    public synchronized void close() {
+        pointerToRustHeap = 0;
+        cleanable.clean();
+    }
+
     public static native Rule fromRule(RuleList x);
 
     @Override public native String toString();
@@ -44,6 +65,27 @@ public class Rule {
 
     public native String verifyClaim(Expression conclusion, Premise[] premises);
 
+    /**
+     * Checks many claims in a single native call. The claims are encoded as described in {@link RuleBatch}
+     *
+     * @return the result of each claim, null if it is valid and the reason it is invalid otherwise
+     */
+    static native String[] verifyClaimBatch(Rule[] rules, Expression[] expressions, int[] conclusions, int[] premiseStart,
+                                            int[] premises, boolean[] subproof, int[] subproofStart, int[] subproofLines);
+
+    /**
+     * Checks the given claims, which may use different rules, with as few calls into the native library as possible
+     *
+     * @param claims the claims to check
+     * @return the result of each claim in the same order, as returned by {@link Claim#isValidClaim()}
+     */
+    public static String[] verifyClaims(Claim... claims) {
+        RuleBatch batch = new RuleBatch();
+        for (Claim c : claims)
+            batch.add(c);
+        return batch.verify();
+    }
+
     public enum Type {
 
         INTRO("Introduction"),
@@ -0,0 +1,143 @@
+package edu.rpi.aris.rules;
+
+import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.proof.Claim;
+import edu.rpi.aris.proof.Premise;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Collects many claims, possibly under different rules, and checks them with a single call into the native library
+ * through {@link Rule#verifyClaimBatch} instead of one call per claim. The claims are flattened into arrays before crossing JNI:
+ * <ul>
+ * <li>every distinct expression is stored once in an expression table and referred to by its index</li>
+ * <li>claim i has the rule {@code rules[i]}, the conclusion {@code conclusions[i]} and the premises
+ * {@code premiseStart[i]} (inclusive) to {@code premiseStart[i + 1]} (exclusive)</li>
+ * <li>premise j is the expression {@code premises[j]}. If {@code subproof[j]} is set that expression is the
+ * assumption of a subproof whose lines are {@code subproofLines[subproofStart[j]]} to
+ * {@code subproofLines[subproofStart[j + 1]]} (exclusive)</li>
+ * </ul>
+ */
+public class RuleBatch {
+
+    private static volatile boolean nativeBatchAvailable = true;
+
+    private final ArrayList<Rule> rules = new ArrayList<>();
+    private final ArrayList<Claim> claims = new ArrayList<>();
+    private final ArrayList<Expression> expressions = new ArrayList<>();
+    private final IdentityHashMap<Expression, Integer> expressionIds = new IdentityHashMap<>();
+    private final IntList conclusions = new IntList();
+    private final IntList premiseStart = new IntList();
+    private final IntList premises = new IntList();
+    private final ArrayList<Boolean> subproof = new ArrayList<>();
+    private final IntList subproofStart = new IntList();
+    private final IntList subproofLines = new IntList();
+
+    public RuleBatch() {
+        premiseStart.add(0);
+        subproofStart.add(0);
+    }
+
+    private int expressionId(Expression e) {
+        Integer id = expressionIds.get(e);
+        if (id == null) {
+            id = expressions.size();
+            expressions.add(e);
+            expressionIds.put(e, id);
+        }
+        return id;
+    }
+
+    /**
+     * Adds a claim to the batch
+     *
+     * @param claim the claim to check
+     * @return the index of the claim's result in the array returned by {@link #verify()}
+     */
+    public int add(Claim claim) {
+        rules.add(claim.getRule());
+        claims.add(claim);
+        conclusions.add(claim.getConclusion() == null ? -1 : expressionId(claim.getConclusion()));
+        for (Premise p : claim.getPremises()) {
+            if (p.isSubproof()) {
+                premises.add(expressionId(p.getAssumption()));
+                subproof.add(true);
+                for (Expression e : p.getSubproofLines())
+                    subproofLines.add(expressionId(e));
+            } else {
+                premises.add(expressionId(p.getPremise()));
+                subproof.add(false);
+            }
+            subproofStart.add(subproofLines.size());
+        }
+        premiseStart.add(premises.size());
+        return claims.size() - 1;
+    }
+
+    public int size() {
+        return claims.size();
+    }
+
+    /**
+     * Checks every claim in the batch
+     *
+     * @return the result of each claim in the order they were added. A result is null if the claim is valid and the
+     * reason it is invalid otherwise, as with {@link Rule#verifyClaim(Expression, Premise[])}
+     */
+    public String[] verify() {
+        String[] results = new String[claims.size()];
+        if (claims.isEmpty())
+            return results;
+        // claims the native side cannot check are answered here exactly as Claim.isValidClaim would
+        boolean checkable = true;
+        for (int i = 0; i < claims.size(); ++i)
+            if (rules.get(i) == null || conclusions.get(i) == -1)
+                checkable = false;
+        if (checkable && nativeBatchAvailable) {
+            boolean[] sub = new boolean[subproof.size()];
+            for (int i = 0; i < sub.length; ++i)
+                sub[i] = subproof.get(i);
+            try {
+                return Rule.verifyClaimBatch(rules.toArray(new Rule[0]), expressions.toArray(new Expression[0]), conclusions.toArray(),
+                        premiseStart.toArray(), premises.toArray(), sub, subproofStart.toArray(), subproofLines.toArray());
+            } catch (UnsatisfiedLinkError e) {
+                // the loaded native library predates the batch entry point
+                nativeBatchAvailable = false;
+            }
+        }
+        for (int i = 0; i < claims.size(); ++i)
+            results[i] = claims.get(i).isValidClaim();
+        return results;
+    }
+
+    private static class IntList {
+
+        private int[] data = new int[16];
+        private int size = 0;
+
+        void add(int i) {
+            if (size == data.length) {
+                int[] d = new int[size * 2];
+                System.arraycopy(data, 0, d, 0, size);
+                data = d;
+            }
+            data[size++] = i;
+        }
+
+        int get(int i) {
+            return data[i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            int[] a = new int[size];
+            System.arraycopy(data, 0, a, 0, size);
+            return a;
+        }
+    }
+
+}
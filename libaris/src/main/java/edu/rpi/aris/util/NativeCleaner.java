@@ -0,0 +1,147 @@
+package edu.rpi.aris.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Frees the native memory behind java handles such as {@link edu.rpi.aris.proof.RustProof} and
+ * {@link edu.rpi.aris.rules.Rule}. A handle registers its pointer when it is created and is either closed explicitly,
+ * which frees the memory immediately, or freed by a daemon thread once the handle has been garbage collected. This
+ * serves the same purpose as java.lang.ref.Cleaner, which is not available on java 8. The number of live native objects
+ * of each type is tracked so long running processes can check that native memory is not leaking
+ */
+public class NativeCleaner {
+
+    private static final Logger logger = LogManager.getLogger(NativeCleaner.class);
+    private static final NativeCleaner instance = new NativeCleaner();
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    // the cleanables must stay strongly reachable until they are run or they would be collected along with their owner
+    private final Set<Cleanable> registered = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, AtomicLong> live = new ConcurrentHashMap<>();
+    private final AtomicLong released = new AtomicLong();
+    // types whose free function is missing from the loaded native library. Their objects are counted as freed but leak
+    private final Set<String> missingFree = ConcurrentHashMap.newKeySet();
+
+    private NativeCleaner() {
+        Thread t = new Thread(this::run, "Native cleaner");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public static NativeCleaner getInstance() {
+        return instance;
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                ((Cleanable) queue.remove()).clean();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                logger.error("Failed to free native object", e);
+            }
+        }
+    }
+
+    /**
+     * Registers the native object behind the given handle
+     *
+     * @param owner   the java handle. The free function must not reference it or it will never be collected
+     * @param type    the name the object is counted under
+     * @param pointer the pointer to the native object
+     * @param free    the function freeing the native object
+     * @return the cleanable that frees the object when it is run
+     */
+    public Cleanable register(Object owner, String type, long pointer, LongConsumer free) {
+        Cleanable c = new Cleanable(owner, type, pointer, free);
+        registered.add(c);
+        live.computeIfAbsent(type, k -> new AtomicLong()).incrementAndGet();
+        return c;
+    }
+
+    /**
+     * @return the number of native objects that have been created and not freed yet
+     */
+    public long getLiveCount() {
+        long count = 0;
+        for (AtomicLong l : live.values())
+            count += l.get();
+        return count;
+    }
+
+    public long getLiveCount(String type) {
+        AtomicLong l = live.get(type);
+        return l == null ? 0 : l.get();
+    }
+
+    /**
+     * @return the number of live native objects of each type
+     */
+    public Map<String, Long> getLiveCounts() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        live.forEach((k, v) -> counts.put(k, v.get()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @return the number of native objects that have been freed
+     */
+    public long getReleasedCount() {
+        return released.get();
+    }
+
+    public class Cleanable extends PhantomReference<Object> {
+
+        private final String type;
+        private final long pointer;
+        private final LongConsumer free;
+        private final AtomicBoolean cleaned = new AtomicBoolean(false);
+
+        private Cleanable(Object owner, String type, long pointer, LongConsumer free) {
+            super(owner, queue);
+            this.type = type;
+            this.pointer = pointer;
+            this.free = free;
+        }
+
+        /**
+         * Frees the native object if it has not already been freed. A failure to free it is logged rather than thrown
+         */
+        public void clean() {
+            if (!cleaned.compareAndSet(false, true))
+                return;
+            registered.remove(this);
+            clear();
+            try {
+                if (pointer != 0 && !missingFree.contains(type))
+                    free.accept(pointer);
+            } catch (UnsatisfiedLinkError e) {
+                if (missingFree.add(type))
+                    logger.warn("The native library cannot free " + type + " objects, their native memory will not be freed", e);
+            } catch (Throwable e) {
+                logger.error("Failed to free native " + type, e);
+            } finally {
+                live.get(type).decrementAndGet();
+                released.incrementAndGet();
+            }
+        }
+
+        public boolean isCleaned() {
+            return cleaned.get();
+        }
+    }
+
+}
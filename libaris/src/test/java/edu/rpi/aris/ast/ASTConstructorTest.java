@@ -0,0 +1,54 @@
+package edu.rpi.aris.ast;
+
+import edu.rpi.aris.proof.ExpressionParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ASTConstructorTest {
+
+    private static ExpressionParseException parseError(String s) {
+        try {
+            ASTConstructor.parseOrThrow(s);
+        } catch (ExpressionParseException e) {
+            return e;
+        }
+        fail("Expected \"" + s + "\" to fail");
+        return null;
+    }
+
+    @Test
+    public void parsesStructure() throws ExpressionParseException {
+        Expression e = ASTConstructor.parseOrThrow("(A & B) -> forall x, P(x, y)");
+        assertTrue(e instanceof Expression.ImplicationExpression);
+        Expression.ImplicationExpression imp = (Expression.ImplicationExpression) e;
+        assertEquals(2, ((Expression.AndExpression) imp.l).exprs.size());
+        Expression.ForallExpression forall = (Expression.ForallExpression) imp.r;
+        assertEquals("x", forall.boundvar);
+        assertEquals(2, ((Expression.ApplyExpression) forall.body).args.size());
+    }
+
+    @Test
+    public void reusesParserAcrossCalls() throws ExpressionParseException {
+        for (int i = 0; i < 100; ++i) {
+            assertNotNull(ASTConstructor.parseOrThrow("a & b & c"));
+            assertNull(ASTConstructor.parse("a & b | c"));
+        }
+    }
+
+    @Test
+    public void reportsErrorRanges() {
+        ExpressionParseException e = parseError("a & b | c");
+        assertEquals(6, e.getErrorOffset());
+        assertEquals(1, e.getErrorLength());
+        e = parseError("a & $");
+        assertEquals(4, e.getErrorOffset());
+        assertEquals(1, e.getErrorLength());
+        e = parseError("a &");
+        assertEquals(2, e.getErrorOffset());
+        e = parseError("a -> -> b");
+        assertEquals(5, e.getErrorOffset());
+        assertEquals(2, e.getErrorLength());
+    }
+
+}
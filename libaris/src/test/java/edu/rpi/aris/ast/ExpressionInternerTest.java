@@ -0,0 +1,31 @@
+package edu.rpi.aris.ast;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExpressionInternerTest {
+
+    @Test
+    public void internsStructurallyEqualTrees() {
+        ExpressionInterner interner = new ExpressionInterner(1024);
+        Expression e1 = interner.intern(ASTConstructor.parse("(a & b & c) -> exists x, (P(x) | Q(x, a))"));
+        Expression e2 = interner.intern(ASTConstructor.parse("(a & b & c) -> exists x, (P(x) | Q(x, a))"));
+        Expression e3 = interner.intern(ASTConstructor.parse("(a & b & c) -> exists y, (P(y) | Q(y, a))"));
+        assertSame(e1, e2);
+        assertNotSame(e1, e3);
+        assertEquals(e1.hashCode(), ASTConstructor.parse("(a & b & c) -> exists x, (P(x) | Q(x, a))").hashCode());
+        assertSame(((Expression.BinaryExpression) e1).l, ((Expression.BinaryExpression) e3).l);
+        assertTrue(ExpressionInterner.equal(e1, e2));
+    }
+
+    @Test
+    public void startsNewGenerationWhenFull() {
+        ExpressionInterner interner = new ExpressionInterner(7);
+        Expression e1 = interner.intern(ASTConstructor.parse("a & b & c"));
+        interner.intern(ASTConstructor.parse("d | e"));
+        assertTrue(interner.size() < 7);
+        assertNotSame(e1, interner.intern(ASTConstructor.parse("a & b & c")));
+    }
+
+}
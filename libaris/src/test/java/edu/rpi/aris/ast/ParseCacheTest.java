@@ -0,0 +1,53 @@
+package edu.rpi.aris.ast;
+
+import edu.rpi.aris.proof.ExpressionParseException;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParseCacheTest {
+
+    @Test
+    public void cachesParses() {
+        AtomicInteger parses = new AtomicInteger();
+        ParseCache cache = new ParseCache(16, s -> {
+            parses.incrementAndGet();
+            if (s.equals("bad"))
+                throw new ExpressionParseException("Parse Error", 1, 2);
+            return new Expression.VarExpression();
+        });
+        Expression e = cache.get("a");
+        assertNotNull(e);
+        assertSame(e, cache.get("a"));
+        assertNull(cache.get("bad"));
+        try {
+            cache.getOrThrow("bad");
+            fail();
+        } catch (ExpressionParseException ex) {
+            assertEquals(1, ex.getErrorOffset());
+            assertEquals(2, ex.getErrorLength());
+        }
+        assertEquals(2, parses.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ParseCache cache = new ParseCache(2, s -> new Expression.VarExpression());
+        Expression a = cache.get("a");
+        cache.get("b");
+        cache.get("a");
+        cache.get("c");
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a"));
+        long misses = cache.getMisses();
+        cache.get("b");
+        assertEquals(misses + 1, cache.getMisses());
+        cache.setMaxSize(1);
+        assertEquals(1, cache.size());
+    }
+
+}
@@ -0,0 +1,42 @@
+package edu.rpi.aris.proof;
+
+import org.junit.Test;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+public class BinaryProofFormatTest {
+
+    @Test
+    public void varIntRoundTrip() throws IOException {
+        int[] values = {0, 1, 127, 128, 300, 16383, 16384, Integer.MAX_VALUE, -1};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int v : values)
+            BinaryProofFormat.writeVarInt(out, v);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        for (int v : values)
+            assertEquals(v, BinaryProofFormat.readVarInt(in));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void detectsMagic() throws IOException {
+        PushbackInputStream bin = new PushbackInputStream(new ByteArrayInputStream(new byte[]{0, 'B', 'R', 'M', 1}), 4);
+        assertTrue(BinaryProofFormat.isBinary(bin));
+        assertEquals(0, bin.read());
+        PushbackInputStream xml = new PushbackInputStream(new ByteArrayInputStream("<?xml".getBytes()), 4);
+        assertFalse(BinaryProofFormat.isBinary(xml));
+        assertEquals('<', xml.read());
+        PushbackInputStream shortIn = new PushbackInputStream(new ByteArrayInputStream(new byte[]{0, 'B'}), 4);
+        assertFalse(BinaryProofFormat.isBinary(shortIn));
+        assertEquals(0, shortIn.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedVarInt() throws IOException {
+        byte[] data = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1};
+        BinaryProofFormat.readVarInt(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+}
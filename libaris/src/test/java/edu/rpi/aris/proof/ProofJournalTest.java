@@ -0,0 +1,208 @@
+package edu.rpi.aris.proof;
+
+import edu.rpi.aris.rules.RuleList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProofJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Proof build() {
+        Proof proof = new Proof("alice");
+        proof.addPremise().setExpressionString("A");
+        proof.addPremise().setExpressionString("B");
+        proof.saved();
+        return proof;
+    }
+
+    private static List<String> lines(Proof proof) {
+        ArrayList<String> lines = new ArrayList<>();
+        for (int i = 0; i < proof.getNumLines(); ++i) {
+            Line l = proof.getLine(i);
+            lines.add(l.getSubProofLevel() + " " + l.isAssumption() + " " + l.getExpressionString() + " " + l.getSelectedRule() + " " + l.getPremises().size());
+        }
+        return lines;
+    }
+
+    private File journalFile(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith("." + ProofJournal.JOURNAL_EXT));
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private ProofJournal recoverOne(File dir) {
+        List<ProofJournal> recovered = ProofJournal.recover(dir, "bob");
+        assertEquals(1, recovered.size());
+        return recovered.get(0);
+    }
+
+    @Test
+    public void replaysEditsAfterCheckpoint() throws IOException {
+        File dir = folder.newFolder();
+        Proof proof = build();
+        ProofJournal journal = ProofJournal.create(dir, proof, null);
+        Line l = proof.addLine(2, false, 0);
+        l.setExpressionString("A & B");
+        l.setSelectedRule(RuleList.CONJUNCTION);
+        proof.setPremise(2, proof.getLine(0), true);
+        proof.setPremise(2, proof.getLine(1), true);
+        proof.addGoal(0).setGoalString("A & B");
+        proof.getAllowedRules().add(RuleList.CONJUNCTION);
+        proof.allowedRulesChanged();
+        List<String> expected = lines(proof);
+        journal.close();
+
+        ProofJournal recovered = recoverOne(dir);
+        Proof r = recovered.getProof();
+        assertEquals(expected, lines(r));
+        assertEquals("A & B", r.getGoal(0).getGoalString());
+        assertTrue(r.getAllowedRules().contains(RuleList.CONJUNCTION));
+        assertTrue(r.isModified());
+        recovered.delete();
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void dropsTornRecord() throws IOException {
+        File dir = folder.newFolder();
+        Proof proof = build();
+        ProofJournal journal = ProofJournal.create(dir, proof, null);
+        proof.getLine(0).setExpressionString("C");
+        List<String> expected = lines(proof);
+        proof.getLine(1).setExpressionString("lost");
+        journal.close();
+        File file = journalFile(dir);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        ProofJournal recovered = recoverOne(dir);
+        assertEquals(expected, lines(recovered.getProof()));
+        // the torn record is cut off so new records follow the last complete one
+        recovered.getProof().getLine(1).setExpressionString("D");
+        expected = lines(recovered.getProof());
+        recovered.close();
+        recovered = recoverOne(dir);
+        assertEquals(expected, lines(recovered.getProof()));
+        recovered.delete();
+    }
+
+    @Test
+    public void stopsAtCorruptRecord() throws IOException {
+        File dir = folder.newFolder();
+        Proof proof = build();
+        ProofJournal journal = ProofJournal.create(dir, proof, null);
+        proof.getLine(0).setExpressionString("C");
+        List<String> expected = lines(proof);
+        long validLength = journalFile(dir).length();
+        proof.getLine(1).setExpressionString("lost");
+        journal.close();
+        File file = journalFile(dir);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        ProofJournal recovered = recoverOne(dir);
+        assertEquals(expected, lines(recovered.getProof()));
+        assertEquals(validLength, file.length());
+        recovered.delete();
+    }
+
+    @Test
+    public void ignoresInvalidRecordLength() throws IOException {
+        File dir = folder.newFolder();
+        Proof proof = build();
+        ProofJournal journal = ProofJournal.create(dir, proof, null);
+        proof.getLine(0).setExpressionString("C");
+        List<String> expected = lines(proof);
+        journal.close();
+        File file = journalFile(dir);
+        long validLength = file.length();
+        Files.write(file.toPath(), new byte[]{0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        ProofJournal recovered = recoverOne(dir);
+        assertEquals(expected, lines(recovered.getProof()));
+        assertEquals(validLength, file.length());
+        recovered.delete();
+    }
+
+    @Test
+    public void skipsRecordsAlreadyInCheckpoint() throws IOException {
+        File dir = folder.newFolder();
+        Proof proof = build();
+        ProofJournal journal = ProofJournal.create(dir, proof, null);
+        proof.addPremise().setExpressionString("C");
+        File file = journalFile(dir);
+        byte[] beforeCheckpoint = Files.readAllBytes(file.toPath());
+        journal.compact(new File(dir, "proof.bram"));
+        proof.getLine(0).setExpressionString("D");
+        List<String> expected = lines(proof);
+        journal.close();
+        // a crash after the checkpoint was swapped in but before the journal was truncated
+        byte[] afterCheckpoint = Files.readAllBytes(file.toPath());
+        byte[] combined = new byte[beforeCheckpoint.length + afterCheckpoint.length];
+        System.arraycopy(beforeCheckpoint, 0, combined, 0, beforeCheckpoint.length);
+        System.arraycopy(afterCheckpoint, 0, combined, beforeCheckpoint.length, afterCheckpoint.length);
+        Files.write(file.toPath(), combined);
+
+        ProofJournal recovered = recoverOne(dir);
+        assertEquals(expected, lines(recovered.getProof()));
+        assertEquals(new File(dir, "proof.bram").getAbsoluteFile(), recovered.getSaveFile());
+        recovered.delete();
+    }
+
+    @Test
+    public void deletesJournalsWithoutUnsavedEdits() throws IOException {
+        File dir = folder.newFolder();
+        Proof proof = build();
+        ProofJournal journal = ProofJournal.create(dir, proof, null);
+        proof.getLine(0).setExpressionString("C");
+        journal.compact(new File(dir, "proof.bram"));
+        proof.saved();
+        journal.close();
+
+        assertTrue(ProofJournal.recover(dir, "bob").isEmpty());
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void skipsJournalsInUse() throws IOException {
+        File dir = folder.newFolder();
+        Proof proof = build();
+        ProofJournal journal = ProofJournal.create(dir, proof, null);
+        proof.getLine(0).setExpressionString("C");
+
+        assertTrue(ProofJournal.recover(dir, "bob").isEmpty());
+        assertEquals(2, dir.list().length);
+        journal.close();
+        recoverOne(dir).delete();
+    }
+
+    @Test
+    public void deletesUnreadableCheckpoints() throws IOException {
+        File dir = folder.newFolder();
+        Files.write(new File(dir, "broken." + ProofJournal.CHECKPOINT_EXT).toPath(), new byte[]{1, 2, 3});
+        Files.write(new File(dir, "broken." + ProofJournal.JOURNAL_EXT).toPath(), new byte[0]);
+
+        assertTrue(ProofJournal.recover(dir, "bob").isEmpty());
+        assertEquals(0, dir.list().length);
+    }
+
+}
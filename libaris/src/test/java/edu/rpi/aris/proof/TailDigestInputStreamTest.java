@@ -0,0 +1,42 @@
+package edu.rpi.aris.proof;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.Assert.*;
+
+public class TailDigestInputStreamTest {
+
+    @Test
+    public void digestsContentBeforeMarker() throws IOException, NoSuchAlgorithmException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; ++i)
+            sb.append("<line>").append(i).append("</line>\n");
+        String content = sb.toString();
+        byte[] file = (content + "<hash>abc</hash>\n</bram>\n").getBytes(StandardCharsets.UTF_8);
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+        for (int chunk : new int[]{1, 7, 64, 4096}) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            TailDigestInputStream in = new TailDigestInputStream(new ByteArrayInputStream(file), digest, 64);
+            byte[] buf = new byte[chunk];
+            // read part of the file and leave the rest for digestBefore
+            for (int read = 0; read < file.length / 2; )
+                read += chunk == 1 ? (in.read() >= 0 ? 1 : 0) : in.read(buf, 0, chunk);
+            assertTrue(in.digestBefore("<hash>".getBytes(StandardCharsets.UTF_8)));
+            assertArrayEquals(expected, digest.digest());
+        }
+    }
+
+    @Test
+    public void missingMarker() throws IOException, NoSuchAlgorithmException {
+        byte[] file = "<bram></bram>".getBytes(StandardCharsets.UTF_8);
+        TailDigestInputStream in = new TailDigestInputStream(new ByteArrayInputStream(file), MessageDigest.getInstance("SHA-256"), 64);
+        assertFalse(in.digestBefore("<hash>".getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
@@ -0,0 +1,58 @@
+package edu.rpi.aris.proof;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ValidationSchedulerTest {
+
+    @Test
+    public void coalescesBursts() {
+        ValidationScheduler scheduler = new ValidationScheduler(60000, 2);
+        Object key = new Object();
+        AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 100; ++i)
+            scheduler.schedule(key, runs::incrementAndGet);
+        assertEquals(1, scheduler.getPendingCount());
+        scheduler.flush();
+        assertEquals(1, runs.get());
+        assertFalse(scheduler.isPending(key));
+    }
+
+    @Test
+    public void cancel() {
+        ValidationScheduler scheduler = new ValidationScheduler(60000, 2);
+        Object key = new Object();
+        AtomicInteger runs = new AtomicInteger();
+        scheduler.schedule(key, runs::incrementAndGet);
+        assertTrue(scheduler.cancel(key));
+        assertFalse(scheduler.cancel(key));
+        scheduler.flush();
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void flushRunsAllKeys() {
+        ValidationScheduler scheduler = new ValidationScheduler(60000, 3);
+        AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 50; ++i)
+            scheduler.schedule(new Object(), runs::incrementAndGet);
+        scheduler.flush();
+        assertEquals(50, runs.get());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void runsAfterDelay() throws InterruptedException {
+        ValidationScheduler scheduler = new ValidationScheduler(10, 1);
+        AtomicInteger runs = new AtomicInteger();
+        scheduler.schedule(new Object(), runs::incrementAndGet);
+        long end = System.currentTimeMillis() + 5000;
+        while (runs.get() == 0 && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+        assertEquals(1, runs.get());
+    }
+
+}
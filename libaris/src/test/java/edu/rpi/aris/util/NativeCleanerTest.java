@@ -0,0 +1,76 @@
+package edu.rpi.aris.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+public class NativeCleanerTest {
+
+    @Test
+    public void freesOnce() {
+        NativeCleaner cleaner = NativeCleaner.getInstance();
+        ConcurrentLinkedQueue<Long> freed = new ConcurrentLinkedQueue<>();
+        Object owner = new Object();
+        NativeCleaner.Cleanable c = cleaner.register(owner, "test-once", 42, freed::add);
+        assertEquals(1, cleaner.getLiveCount("test-once"));
+        c.clean();
+        c.clean();
+        assertTrue(c.isCleaned());
+        assertEquals(1, freed.size());
+        assertEquals(42L, (long) freed.peek());
+        assertEquals(0, cleaner.getLiveCount("test-once"));
+    }
+
+    @Test
+    public void freesCollectedOwners() throws InterruptedException {
+        NativeCleaner cleaner = NativeCleaner.getInstance();
+        ConcurrentLinkedQueue<Long> freed = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 100; ++i)
+            cleaner.register(new Object(), "test-gc", i + 1, freed::add);
+        assertEquals(100, cleaner.getLiveCount("test-gc"));
+        long end = System.currentTimeMillis() + 10000;
+        while (cleaner.getLiveCount("test-gc") > 0 && System.currentTimeMillis() < end) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, cleaner.getLiveCount("test-gc"));
+        assertEquals(100, freed.size());
+    }
+
+    @Test
+    public void missingFreeIsNotThrown() {
+        NativeCleaner cleaner = NativeCleaner.getInstance();
+        ConcurrentLinkedQueue<Long> calls = new ConcurrentLinkedQueue<>();
+        Object a = new Object();
+        Object b = new Object();
+        NativeCleaner.Cleanable ca = cleaner.register(a, "test-missing", 1, p -> {
+            calls.add(p);
+            throw new UnsatisfiedLinkError("free");
+        });
+        NativeCleaner.Cleanable cb = cleaner.register(b, "test-missing", 2, p -> {
+            calls.add(p);
+            throw new UnsatisfiedLinkError("free");
+        });
+        ca.clean();
+        cb.clean();
+        assertTrue(ca.isCleaned());
+        assertTrue(cb.isCleaned());
+        // the missing free is only called once
+        assertEquals(1, calls.size());
+        assertEquals(0, cleaner.getLiveCount("test-missing"));
+    }
+
+    @Test
+    public void failedFreeIsNotThrown() {
+        NativeCleaner cleaner = NativeCleaner.getInstance();
+        NativeCleaner.Cleanable c = cleaner.register(new Object(), "test-failed", 1, p -> {
+            throw new IllegalStateException("free");
+        });
+        c.clean();
+        assertTrue(c.isCleaned());
+        assertEquals(0, cleaner.getLiveCount("test-failed"));
+    }
+
+}
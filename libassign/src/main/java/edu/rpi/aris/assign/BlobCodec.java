@@ -0,0 +1,77 @@
+package edu.rpi.aris.assign;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes the problem and submission data stored in the server database. Stored blobs start with a header followed by
+ * the deflate compressed problem. Blobs written before compression was added have no header and are read as is, so
+ * both kinds of rows can exist in the same table
+ */
+public class BlobCodec {
+
+    private static final byte[] HEADER = {0, 'D', 'F', '1'};
+
+    private BlobCodec() {
+    }
+
+    /**
+     * @return the header every compressed blob starts with
+     */
+    public static byte[] getHeader() {
+        return HEADER.clone();
+    }
+
+    public static boolean isEncoded(byte[] data) {
+        return data != null && data.length >= HEADER.length && Arrays.equals(Arrays.copyOf(data, HEADER.length), HEADER);
+    }
+
+    @NotNull
+    public static byte[] encode(@NotNull byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + HEADER.length + 16);
+        out.write(HEADER, 0, HEADER.length);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater)) {
+            dos.write(data);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Compresses the given stream as it is read, for use with {@link java.sql.PreparedStatement#setBinaryStream}
+     */
+    @NotNull
+    public static InputStream encode(@NotNull InputStream in) {
+        return new SequenceInputStream(new ByteArrayInputStream(HEADER), new DeflaterInputStream(in));
+    }
+
+    /**
+     * Wraps a stored blob so it is decompressed as it is read. Blobs without the header are returned unchanged
+     */
+    @NotNull
+    public static InputStream decode(@NotNull InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, HEADER.length);
+        byte[] head = new byte[HEADER.length];
+        int read = 0;
+        int r;
+        while (read < head.length && (r = pushback.read(head, read, head.length - read)) > 0)
+            read += r;
+        if (read == head.length && Arrays.equals(head, HEADER))
+            return new InflaterInputStream(pushback);
+        if (read > 0)
+            pushback.unread(head, 0, read);
+        return pushback;
+    }
+
+}
@@ -0,0 +1,52 @@
+package edu.rpi.aris.assign;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.bind.DatatypeConverter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Stores problem and submission data in the server's content addressed blob table. Each distinct payload is stored
+ * once under the SHA-256 of its uncompressed bytes and problems and submissions reference it by that hash. The
+ * reference count of a blob is kept up to date by database triggers so rows removed by cascading deletes are counted,
+ * and a blob is deleted once nothing references it
+ */
+public class BlobStore {
+
+    private BlobStore() {
+    }
+
+    @NotNull
+    public static String hash(@NotNull byte[] data) {
+        try {
+            return DatatypeConverter.printHexBinary(MessageDigest.getInstance("SHA-256").digest(data)).toLowerCase();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Adds the data to the blob table if it is not already there. The blob is only kept once a problem or submission
+     * references the returned hash. An existing blob is locked until the transaction ends, so a concurrent delete of
+     * its last reference cannot remove it before the caller's row references it
+     *
+     * @param connection the connection of the transaction inserting the referencing row
+     * @param data       the uncompressed data
+     * @return the hash to reference the blob by
+     */
+    @NotNull
+    public static String store(@NotNull Connection connection, @NotNull byte[] data) throws SQLException {
+        String hash = hash(data);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO blob (hash, data, ref_count) VALUES (?, ?, 0) ON CONFLICT (hash) DO UPDATE SET ref_count = blob.ref_count;")) {
+            insert.setString(1, hash);
+            insert.setBytes(2, BlobCodec.encode(data));
+            insert.executeUpdate();
+        }
+        return hash;
+    }
+
+}
@@ -108,11 +108,16 @@ public class LibAssign implements Thread.UncaughtExceptionHandler {
         instance.showExceptionError(Thread.currentThread(), e, false);
     }
 
+    /**
+     * Writes the problem to the given stream on a separate thread in the converter's preferred format. Used for
+     * storing problems in a database, files meant to be opened by the user should use the default format
+     */
     public static <T extends ArisModule> void convertProblem(PipedOutputStream pos, Problem<T> problem, ArisModule<T> module, boolean isProblemSolution) {
         Thread parentThread = Thread.currentThread();
         pipedStreamThreadPool.submit(() -> {
             try {
-                module.getProblemConverter().convertProblem(problem, pos, isProblemSolution);
+                ProblemConverter<T> converter = module.getProblemConverter();
+                converter.convertProblem(problem, pos, isProblemSolution, converter.getPreferredFormat());
                 pos.close();
             } catch (Exception e) {
                 logger.error("An exception occurred", e);
@@ -125,7 +130,7 @@ public class LibAssign implements Thread.UncaughtExceptionHandler {
         Thread parentThread = Thread.currentThread();
         pipedStreamThreadPool.submit(() -> {
             try {
-                converter.convertProblem(problem, pos, isProblemSolution);
+                converter.convertProblem(problem, pos, isProblemSolution, converter.getPreferredFormat());
                 pos.close();
             } catch (Exception e) {
                 logger.error("An exception occurred", e);
@@ -1,16 +1,27 @@
 package edu.rpi.aris.assign;
 
+import java.time.ZonedDateTime;
+
 public abstract class ServerCallbacks {
 
     private static ServerCallbacks instance = new ServerCallbacks() {
         @Override
-        public void scheduleForGrading(int submissionId) {
+        public void scheduleForGrading(int submissionId, int classId, int userId, ZonedDateTime dueDate) {
+        }
+
+        @Override
+        public int getGradingBacklog() {
+            return 0;
         }
 
         @Override
         public long getMaxSubmissionSize() {
             return -1;
         }
+
+        @Override
+        public void problemModified(int problemId) {
+        }
     };
 
     public static void setServerCallbacks(ServerCallbacks callbacks) {
@@ -23,8 +34,27 @@ public abstract class ServerCallbacks {
         return instance;
     }
 
-    public abstract void scheduleForGrading(int submissionId);
+    public abstract void scheduleForGrading(int submissionId, int classId, int userId, ZonedDateTime dueDate);
+
+    /**
+     * @return the number of submissions waiting to be graded
+     */
+    public abstract int getGradingBacklog();
+
+    /**
+     * @return the status string sent to clients for a submission that is waiting to be graded
+     */
+    public String getGradingStatusString() {
+        int backlog = getGradingBacklog();
+        return backlog > 0 ? "Grading (" + backlog + " submissions queued)" : "Grading";
+    }
 
     public abstract long getMaxSubmissionSize();
 
+    /**
+     * Called when a problem's data is replaced or the problem is deleted so anything derived from the old data can be
+     * dropped
+     */
+    public abstract void problemModified(int problemId);
+
 }
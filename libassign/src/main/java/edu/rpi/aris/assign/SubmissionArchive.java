@@ -0,0 +1,360 @@
+package edu.rpi.aris.assign;
+
+import edu.rpi.aris.assign.message.MsgUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A single file holding the problems and submissions of an assignment for bulk export, backups and offline regrading.
+ * Each entry holds the data exactly as it is stored in the database so exporting never decodes or recompresses it.
+ * The archive is read through memory mapped buffers so entries can be streamed without a copy per read.
+ * <p>
+ * Version 1 layout, all numbers big endian and str is an int byte length followed by UTF-8:
+ * <pre>
+ * magic (4 bytes) version (1 byte)
+ * entry data, one entry after another
+ * index:   int entry count, int class id, int assignment id, str assignment name, then per entry
+ *            byte kind, long offset, int length, int CRC32 of the data, str module name, str blob hash
+ *            problem:    int problem id, str name
+ *            submission: int user id, int submission id, int problem id, int class id, int assignment id,
+ *                        double grade, str status, str status message, long submission time in epoch millis
+ * trailer: long index offset, int CRC32 of the index, trailer magic (4 bytes)
+ * </pre>
+ */
+public class SubmissionArchive implements Closeable {
+
+    public static final String FILE_EXTENSION = "arisarchive";
+    static final byte[] MAGIC = {0, 'A', 'R', 'A'};
+    static final byte[] TRAILER_MAGIC = {'A', 'R', 'A', 'X'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 1;
+    static final int TRAILER_SIZE = 8 + 4 + TRAILER_MAGIC.length;
+    static final byte KIND_PROBLEM = 1;
+    static final byte KIND_SUBMISSION = 2;
+    // keeps every entry inside a single mapped segment. A segment is mapped with room for the longest entry past its
+    // end, and a mapping can be at most Integer.MAX_VALUE bytes
+    static final int MAX_ENTRY_SIZE = 1 << 29;
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final File file;
+    private final int classId;
+    private final int assignmentId;
+    private final String assignmentName;
+    private final List<Entry> problems;
+    private final List<Entry> submissions;
+    private MappedByteBuffer[] segments;
+
+    private SubmissionArchive(File file, MappedByteBuffer[] segments, int classId, int assignmentId, String assignmentName, List<Entry> problems, List<Entry> submissions) {
+        this.file = file;
+        this.segments = segments;
+        this.classId = classId;
+        this.assignmentId = assignmentId;
+        this.assignmentName = assignmentName;
+        this.problems = Collections.unmodifiableList(problems);
+        this.submissions = Collections.unmodifiableList(submissions);
+    }
+
+    /**
+     * Maps the archive and reads its index. Entry data is only read when it is requested
+     */
+    @NotNull
+    public static SubmissionArchive open(@NotNull File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE)
+                throw new IOException("Invalid archive file");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException("Invalid archive file");
+            int version = header.get() & 0xFF;
+            if (version != VERSION)
+                throw new IOException("Unsupported archive version " + version);
+            ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_SIZE, TRAILER_SIZE);
+            long indexOffset = trailer.getLong();
+            int indexCrc = trailer.getInt();
+            trailer.get(magic);
+            if (!Arrays.equals(magic, TRAILER_MAGIC))
+                throw new IOException("The archive is incomplete");
+            long indexLength = size - TRAILER_SIZE - indexOffset;
+            if (indexOffset < HEADER_SIZE || indexLength < 4 || indexLength > Integer.MAX_VALUE)
+                throw new IOException("Invalid archive index");
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, indexLength);
+            CRC32 crc = new CRC32();
+            crc.update(index.duplicate());
+            if ((int) crc.getValue() != indexCrc)
+                throw new IOException("The archive index is corrupt");
+            try {
+                int count = index.getInt();
+                int classId = index.getInt();
+                int assignmentId = index.getInt();
+                String name = readString(index);
+                ArrayList<Entry> problems = new ArrayList<>();
+                ArrayList<Entry> submissions = new ArrayList<>();
+                int maxLength = 0;
+                for (int i = 0; i < count; ++i) {
+                    Entry entry = readEntry(index, indexOffset);
+                    maxLength = Math.max(maxLength, entry.length);
+                    (entry.isSubmission() ? submissions : problems).add(entry);
+                }
+                return new SubmissionArchive(file, map(channel, indexOffset, maxLength), classId, assignmentId, name, problems, submissions);
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid archive index", e);
+            }
+        }
+    }
+
+    /**
+     * Maps the entry data in segments that overlap by the longest entry, so every entry can be read from the segment
+     * its offset falls in
+     */
+    private static MappedByteBuffer[] map(FileChannel channel, long dataEnd, int maxLength) throws IOException {
+        int numSegments = (int) ((dataEnd + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; ++i) {
+            long start = i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(dataEnd - start, SEGMENT_SIZE + maxLength));
+        }
+        return segments;
+    }
+
+    private static Entry readEntry(ByteBuffer index, long dataEnd) throws IOException {
+        byte kind = index.get();
+        long offset = index.getLong();
+        int length = index.getInt();
+        int crc = index.getInt();
+        String moduleName = readString(index);
+        String blobHash = readString(index);
+        if (offset < HEADER_SIZE || length < 0 || length > MAX_ENTRY_SIZE || offset + length > dataEnd)
+            throw new IOException("Invalid archive entry");
+        switch (kind) {
+            case KIND_PROBLEM:
+                int pid = index.getInt();
+                return new Entry(offset, length, crc, moduleName, blobHash, pid, readString(index), null);
+            case KIND_SUBMISSION:
+                int uid = index.getInt();
+                int sid = index.getInt();
+                int subPid = index.getInt();
+                int cid = index.getInt();
+                int aid = index.getInt();
+                double grade = index.getDouble();
+                GradingStatus status;
+                try {
+                    status = GradingStatus.valueOf(readString(index));
+                } catch (IllegalArgumentException e) {
+                    status = GradingStatus.NONE;
+                }
+                String statusStr = readString(index);
+                ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochMilli(index.getLong()), ZoneOffset.UTC);
+                MsgUtil.SubmissionInfo info = new MsgUtil.SubmissionInfo(uid, sid, subPid, cid, aid, grade, status, statusStr, time);
+                return new Entry(offset, length, crc, moduleName, blobHash, subPid, null, info);
+            default:
+                throw new IOException("Unknown archive entry kind " + kind);
+        }
+    }
+
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = (str == null ? "" : str).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining())
+            throw new IOException("Invalid string in archive index");
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getClassId() {
+        return classId;
+    }
+
+    public int getAssignmentId() {
+        return assignmentId;
+    }
+
+    @NotNull
+    public String getAssignmentName() {
+        return assignmentName;
+    }
+
+    /**
+     * @return the problems of the assignment in the order they were written
+     */
+    @NotNull
+    public List<Entry> getProblems() {
+        return problems;
+    }
+
+    /**
+     * @return the submissions of the assignment in the order they were written
+     */
+    @NotNull
+    public List<Entry> getSubmissions() {
+        return submissions;
+    }
+
+    /**
+     * Returns the stored data of an entry without copying it. The buffer is read only and independent of any other
+     * buffer returned by this archive, so entries can be read from several threads at once
+     */
+    @NotNull
+    public ByteBuffer getRawData(@NotNull Entry entry) throws IOException {
+        MappedByteBuffer[] segments = this.segments;
+        if (segments == null)
+            throw new IOException("The archive has been closed");
+        ByteBuffer segment = segments[(int) (entry.offset / SEGMENT_SIZE)].duplicate();
+        int start = (int) (entry.offset % SEGMENT_SIZE);
+        segment.limit(start + entry.length).position(start);
+        return segment.slice();
+    }
+
+    /**
+     * Checks the entry's checksum and returns its decoded data
+     *
+     * @throws IOException if the entry is corrupt
+     */
+    @NotNull
+    public InputStream getData(@NotNull Entry entry) throws IOException {
+        ByteBuffer data = getRawData(entry);
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        if ((int) crc.getValue() != entry.crc)
+            throw new IOException("Archive entry for " + entry.getBlobHash() + " in " + file.getName() + " is corrupt");
+        return BlobCodec.decode(new ByteBufferInputStream(data));
+    }
+
+    /**
+     * Drops the archive's mappings. The mapped memory is released once the buffers are garbage collected
+     */
+    @Override
+    public void close() {
+        segments = null;
+    }
+
+    public static class Entry {
+
+        private final long offset;
+        private final int length;
+        private final int crc;
+        private final String moduleName;
+        private final String blobHash;
+        private final int problemId;
+        private final String problemName;
+        private final MsgUtil.SubmissionInfo info;
+
+        private Entry(long offset, int length, int crc, String moduleName, String blobHash, int problemId, String problemName, MsgUtil.SubmissionInfo info) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+            this.moduleName = moduleName;
+            this.blobHash = blobHash;
+            this.problemId = problemId;
+            this.problemName = problemName;
+            this.info = info;
+        }
+
+        public boolean isSubmission() {
+            return info != null;
+        }
+
+        @NotNull
+        public String getModuleName() {
+            return moduleName;
+        }
+
+        /**
+         * @return the hash the data is stored under in the blob table
+         */
+        @NotNull
+        public String getBlobHash() {
+            return blobHash;
+        }
+
+        public int getProblemId() {
+            return problemId;
+        }
+
+        /**
+         * @return the name of the problem or null for submissions
+         */
+        @Nullable
+        public String getProblemName() {
+            return problemName;
+        }
+
+        /**
+         * @return the submission's metadata or null for problems
+         */
+        @Nullable
+        public MsgUtil.SubmissionInfo getSubmissionInfo() {
+            return info;
+        }
+
+        /**
+         * @return the size of the stored data in bytes
+         */
+        public int getLength() {
+            return length;
+        }
+
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
+}
@@ -0,0 +1,142 @@
+package edu.rpi.aris.assign;
+
+import edu.rpi.aris.assign.message.MsgUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a {@link SubmissionArchive}. Entries are written one after another as they are added and the index is
+ * written when the archive is closed, so an assignment can be exported straight from a database cursor without
+ * holding more than one entry in memory. An archive that is not closed has no index and cannot be opened. An export
+ * that fails part way must call {@link #abort()} instead of {@link #close()} so it does not leave behind an archive
+ * that opens cleanly but is missing entries
+ */
+public class SubmissionArchiveWriter implements Closeable {
+
+    private final File file;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private final DataOutputStream indexData = new DataOutputStream(index);
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[8192];
+    private long position;
+    private int count;
+    private int submissionCount;
+    private boolean closed;
+
+    /**
+     * @param file           the archive file to create
+     * @param classId        the class the assignment belongs to
+     * @param assignmentId   the assignment being archived
+     * @param assignmentName the name of the assignment
+     */
+    public SubmissionArchiveWriter(@NotNull File file, int classId, int assignmentId, @NotNull String assignmentName) throws IOException {
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.write(SubmissionArchive.MAGIC);
+        out.writeByte(SubmissionArchive.VERSION);
+        position = SubmissionArchive.HEADER_SIZE;
+        indexData.writeInt(classId);
+        indexData.writeInt(assignmentId);
+        SubmissionArchive.writeString(indexData, assignmentName);
+    }
+
+    /**
+     * Adds a problem of the assignment
+     *
+     * @param data the problem data as it is stored in the database. It is copied without being decoded
+     */
+    public void addProblem(int pid, @NotNull String name, @NotNull String moduleName, @NotNull String blobHash, @NotNull InputStream data) throws IOException {
+        writeEntry(SubmissionArchive.KIND_PROBLEM, moduleName, blobHash, data);
+        indexData.writeInt(pid);
+        SubmissionArchive.writeString(indexData, name);
+    }
+
+    /**
+     * Adds a submission to the assignment
+     *
+     * @param data the submission data as it is stored in the database. It is copied without being decoded
+     */
+    public void addSubmission(@NotNull MsgUtil.SubmissionInfo info, @NotNull String moduleName, @NotNull String blobHash, @NotNull InputStream data) throws IOException {
+        writeEntry(SubmissionArchive.KIND_SUBMISSION, moduleName, blobHash, data);
+        indexData.writeInt(info.uid);
+        indexData.writeInt(info.sid);
+        indexData.writeInt(info.pid);
+        indexData.writeInt(info.cid);
+        indexData.writeInt(info.aid);
+        indexData.writeDouble(info.grade);
+        SubmissionArchive.writeString(indexData, info.status.name());
+        SubmissionArchive.writeString(indexData, info.statusStr);
+        indexData.writeLong(info.submissionTime.toInstant().toEpochMilli());
+        ++submissionCount;
+    }
+
+    private void writeEntry(byte kind, String moduleName, String blobHash, InputStream data) throws IOException {
+        if (closed)
+            throw new IOException("The archive has been closed");
+        crc.reset();
+        long start = position;
+        int read;
+        while ((read = data.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+            crc.update(buffer, 0, read);
+            position += read;
+            if (position - start > SubmissionArchive.MAX_ENTRY_SIZE)
+                throw new IOException("Archive entry is too large");
+        }
+        indexData.writeByte(kind);
+        indexData.writeLong(start);
+        indexData.writeInt((int) (position - start));
+        indexData.writeInt((int) crc.getValue());
+        SubmissionArchive.writeString(indexData, moduleName);
+        SubmissionArchive.writeString(indexData, blobHash);
+        ++count;
+    }
+
+    /**
+     * @return the number of submissions written so far
+     */
+    public int getSubmissionCount() {
+        return submissionCount;
+    }
+
+    /**
+     * Writes the index and trailer and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            long indexOffset = position;
+            byte[] indexBytes = index.toByteArray();
+            crc.reset();
+            crc.update(new byte[]{(byte) (count >>> 24), (byte) (count >>> 16), (byte) (count >>> 8), (byte) count}, 0, 4);
+            crc.update(indexBytes, 0, indexBytes.length);
+            out.writeInt(count);
+            out.write(indexBytes);
+            out.writeLong(indexOffset);
+            out.writeInt((int) crc.getValue());
+            out.write(SubmissionArchive.TRAILER_MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Closes the file without writing the index and deletes it
+     */
+    public void abort() {
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+}
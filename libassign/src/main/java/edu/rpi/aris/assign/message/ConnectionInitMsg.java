@@ -1,6 +1,9 @@
 package edu.rpi.aris.assign.message;
 
 import edu.rpi.aris.assign.*;
+import edu.rpi.aris.assign.spi.ArisModule;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -13,12 +16,16 @@ import java.util.Map;
 
 public class ConnectionInitMsg extends Message {
 
+    private static final Logger logger = LogManager.getLogger(ConnectionInitMsg.class);
+
     private int userId;
     private int defaultRole;
     private AuthType userAuthType;
     private ServerPermissions permissions;
     private HashMap<Integer, String> classNames = new HashMap<>();
     private HashMap<Integer, Integer> classRoles = new HashMap<>();
+    // the problem formats the server accepts for each module
+    private HashMap<String, int[]> problemFormats = new HashMap<>();
 
     public ConnectionInitMsg() {
         super(Perm.CONNECTION_INIT);
@@ -36,6 +43,10 @@ public class ConnectionInitMsg extends Message {
         return classRoles;
     }
 
+    public HashMap<String, int[]> getProblemFormats() {
+        return problemFormats;
+    }
+
     public int getUserId() {
         return userId;
     }
@@ -62,6 +73,15 @@ public class ConnectionInitMsg extends Message {
             }
         }
         userAuthType = user.authType;
+        for (String name : ModuleService.getService().moduleNames()) {
+            try {
+                ArisModule<?> module = ModuleService.getService().getModule(name);
+                if (module != null)
+                    problemFormats.put(name, module.getProblemConverter().getSupportedFormats());
+            } catch (Exception e) {
+                logger.error("Failed to get the problem formats for module " + name, e);
+            }
+        }
         return null;
     }
 
@@ -38,7 +38,7 @@ public class ProblemCreateMsg<T extends ArisModule> extends ProblemMessage<T> {
         if (module == null)
             return ErrorType.MISSING_MODULE;
         ProblemConverter<T> converter = module.getProblemConverter();
-        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO problem (name, data, created_by, created_on, module_name, problem_hash) VALUES (?, ?, (SELECT username FROM users WHERE id = ? LIMIT 1), now(), ?, ?) RETURNING id");
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO problem (name, blob_hash, created_by, created_on, module_name, problem_hash) VALUES (?, ?, (SELECT username FROM users WHERE id = ? LIMIT 1), now(), ?, ?) RETURNING id");
              PipedInputStream pis = new PipedInputStream();
              PipedOutputStream pos = new PipedOutputStream(pis);
              ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
@@ -50,7 +50,7 @@ public class ProblemCreateMsg<T extends ArisModule> extends ProblemMessage<T> {
             String hash = DatatypeConverter.printHexBinary(digest.digest(baos.toByteArray())).toLowerCase();
 
             statement.setString(1, name);
-            statement.setBytes(2, baos.toByteArray());
+            statement.setString(2, BlobStore.store(connection, baos.toByteArray()));
 
             statement.setInt(3, user.uid);
             statement.setString(4, getModuleName());
@@ -1,6 +1,7 @@
 package edu.rpi.aris.assign.message;
 
 import edu.rpi.aris.assign.Perm;
+import edu.rpi.aris.assign.ServerCallbacks;
 import edu.rpi.aris.assign.ServerPermissions;
 import edu.rpi.aris.assign.User;
 import org.jetbrains.annotations.NotNull;
@@ -31,6 +32,7 @@ public class ProblemDeleteMsg extends Message {
             deleteProblem.setInt(1, pid);
             deleteProblem.executeUpdate();
         }
+        ServerCallbacks.getInstance().problemModified(pid);
         return null;
     }
 
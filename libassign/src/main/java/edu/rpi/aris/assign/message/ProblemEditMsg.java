@@ -51,7 +51,7 @@ public class ProblemEditMsg<T extends ArisModule> extends ProblemMessage<T> {
         if (getProblem() != null) {
             ArisModule<T> module = ModuleService.getService().getModule(getModuleName());
             ProblemConverter<T> converter = module.getProblemConverter();
-            try (PreparedStatement updateData = connection.prepareStatement("UPDATE problem SET data = ?, problem_hash = ? WHERE id = ?;");
+            try (PreparedStatement updateData = connection.prepareStatement("UPDATE problem SET blob_hash = ?, problem_hash = ? WHERE id = ?;");
                  PipedInputStream pis = new PipedInputStream();
                  PipedOutputStream pos = new PipedOutputStream(pis);
                  ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
@@ -62,11 +62,12 @@ public class ProblemEditMsg<T extends ArisModule> extends ProblemMessage<T> {
                 MessageDigest digest = MessageDigest.getInstance("MD5");
                 String hash = DatatypeConverter.printHexBinary(digest.digest(baos.toByteArray())).toLowerCase();
 
-                updateData.setBytes(1, baos.toByteArray());
+                updateData.setString(1, BlobStore.store(connection, baos.toByteArray()));
                 updateData.setString(2, hash);
                 updateData.setInt(3, pid);
                 updateData.executeUpdate();
             }
+            ServerCallbacks.getInstance().problemModified(pid);
         }
         return null;
     }
@@ -28,7 +28,7 @@ public class ProblemFetchMsg<T extends ArisModule> extends ProblemMessage<T> {
     @Nullable
     @Override
     public ErrorType processProblemMessage(@NotNull Connection connection, @NotNull User user, @NotNull ServerPermissions permissions) throws Exception {
-        try (PreparedStatement statement = connection.prepareStatement("SELECT DISTINCT p.module_name, p.data, p.problem_hash FROM problem p, assignment a, user_class uc WHERE p.id = ? AND a.problem_id = p.id AND a.class_id = uc.class_id AND uc.user_id = ?;")) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT DISTINCT p.module_name, b.data, p.problem_hash FROM problem p, blob b, assignment a, user_class uc WHERE p.id = ? AND b.hash = p.blob_hash AND a.problem_id = p.id AND a.class_id = uc.class_id AND uc.user_id = ?;")) {
             statement.setInt(1, pid);
             statement.setInt(2, user.uid);
             try (ResultSet rs = statement.executeQuery()) {
@@ -39,7 +39,7 @@ public class ProblemFetchMsg<T extends ArisModule> extends ProblemMessage<T> {
                 if (module == null)
                     return ErrorType.MISSING_MODULE;
                 ProblemConverter<T> converter = module.getProblemConverter();
-                try (InputStream in = rs.getBinaryStream(2)) {
+                try (InputStream in = BlobCodec.decode(rs.getBinaryStream(2))) {
                     setProblem(converter.loadProblem(in, false));
                 }
                 problemHash = rs.getString(3);
@@ -11,13 +11,21 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.sql.Connection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 public abstract class ProblemMessage<T extends ArisModule> extends DataMessage {
 
     private static final long MAX_FILE_SIZE = ServerCallbacks.getInstance().getMaxSubmissionSize();
+    // the formats the server accepts for each module, used when sending a problem with a request
+    private static Map<String, int[]> serverFormats = Collections.emptyMap();
 
     private final String moduleName;
     private final boolean isProblemSolution;
+    // the problem formats the sender of this message can read
+    private int[] acceptedFormats;
+    private transient int[] peerFormats;
     private transient boolean tooLarge = false;
     private transient Problem<T> problem;
 
@@ -26,13 +34,29 @@ public abstract class ProblemMessage<T extends ArisModule> extends DataMessage {
         this.moduleName = moduleName;
         this.problem = problem;
         this.isProblemSolution = isProblemSolution;
+        acceptedFormats = getLocalFormats(moduleName);
+        peerFormats = serverFormats.get(moduleName);
     }
 
     ProblemMessage(@NotNull String moduleName, Problem<T> problem, boolean isProblemSolution, @NotNull Perm perm) {
-        super(perm);
-        this.moduleName = moduleName;
-        this.problem = problem;
-        this.isProblemSolution = isProblemSolution;
+        this(moduleName, problem, isProblemSolution, perm, false);
+    }
+
+    /**
+     * Sets the problem formats the server accepts for each module as sent in {@link ConnectionInitMsg}. Until this is
+     * set problems sent to the server use {@link ProblemConverter#FORMAT_DEFAULT}
+     */
+    public static void setServerFormats(Map<String, int[]> formats) {
+        serverFormats = formats == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(formats));
+    }
+
+    private static int[] getLocalFormats(String moduleName) {
+        try {
+            ArisModule<?> module = moduleName == null ? null : ModuleService.getService().getModule(moduleName);
+            return module == null ? null : module.getProblemConverter().getSupportedFormats();
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     @Override
@@ -47,7 +71,7 @@ public abstract class ProblemMessage<T extends ArisModule> extends DataMessage {
                 throw new ArisException("No module for name: " + moduleName);
             ProblemConverter<T> converter = module.getProblemConverter();
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            converter.convertProblem(problem, baos, isProblemSolution);
+            converter.convertProblem(problem, baos, isProblemSolution, ProblemConverter.negotiateFormat(converter.getSupportedFormats(), peerFormats));
             baos.close();
             int size = baos.size();
             out.writeInt(size);
@@ -59,6 +83,9 @@ public abstract class ProblemMessage<T extends ArisModule> extends DataMessage {
 
     @Override
     public void receiveData(DataInputStream in) throws Exception {
+        // the same message object is sent back as the reply so it has to advertise our formats from here on
+        peerFormats = acceptedFormats;
+        acceptedFormats = getLocalFormats(moduleName);
         int size = in.readInt();
         if (size == -1)
             return;
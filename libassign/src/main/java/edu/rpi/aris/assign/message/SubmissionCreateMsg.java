@@ -2,9 +2,11 @@ package edu.rpi.aris.assign.message;
 
 import edu.rpi.aris.assign.*;
 import edu.rpi.aris.assign.spi.ArisModule;
+import org.apache.commons.io.IOUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.sql.Connection;
@@ -38,9 +40,12 @@ public class SubmissionCreateMsg<T extends ArisModule> extends ProblemMessage<T>
         if (getProblem() != null) {
             ArisModule<T> module = ModuleService.getService().getModule(getModuleName());
             ProblemConverter<T> converter = module.getProblemConverter();
-            try (PreparedStatement insertSubmission = connection.prepareStatement("INSERT INTO submission (class_id, assignment_id, user_id, problem_id, data, time, short_status, status, grade) VALUES (?, ?, ?, ?, ?, now(), ?, ?, 0) RETURNING id, time;");
+            try (PreparedStatement insertSubmission = connection.prepareStatement("INSERT INTO submission (class_id, assignment_id, user_id, problem_id, blob_hash, time, short_status, status, grade, graded_problem_hash) VALUES (?, ?, ?, ?, ?, now(), ?, ?, ?, ?) RETURNING id, time, (SELECT a.due_date FROM assignment a WHERE a.id = submission.assignment_id AND a.class_id = submission.class_id AND a.problem_id = submission.problem_id);");
+                 // an identical submission already graded against the current version of the problem has the same grade
+                 PreparedStatement selectGraded = connection.prepareStatement("SELECT s.short_status, s.status, s.grade, p.blob_hash FROM submission s, problem p WHERE s.problem_id = ? AND s.blob_hash = ? AND p.id = s.problem_id AND s.graded_problem_hash = p.blob_hash AND s.short_status IN ('" + GradingStatus.CORRECT.name() + "', '" + GradingStatus.INCORRECT.name() + "', '" + GradingStatus.PARTIAL.name() + "') LIMIT 1;");
                  PipedInputStream pis = new PipedInputStream();
-                 PipedOutputStream pos = new PipedOutputStream(pis)) {
+                 PipedOutputStream pos = new PipedOutputStream(pis);
+                 ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
                 insertSubmission.setInt(1, cid);
                 insertSubmission.setInt(2, aid);
                 insertSubmission.setInt(3, user.uid);
@@ -48,18 +53,37 @@ public class SubmissionCreateMsg<T extends ArisModule> extends ProblemMessage<T>
 
                 LibAssign.convertProblem(pos, getProblem(), converter, true);
 
-                insertSubmission.setBinaryStream(5, pis);
-                status = GradingStatus.GRADING;
-                grade = 0;
-                statusStr = "Grading";
+                IOUtils.copy(pis, baos);
+                String blobHash = BlobStore.store(connection, baos.toByteArray());
+                insertSubmission.setString(5, blobHash);
+                String gradedProblemHash = null;
+                selectGraded.setInt(1, pid);
+                selectGraded.setString(2, blobHash);
+                try (ResultSet rs = selectGraded.executeQuery()) {
+                    if (rs.next()) {
+                        status = GradingStatus.valueOf(rs.getString(1));
+                        statusStr = rs.getString(2);
+                        grade = rs.getDouble(3);
+                        gradedProblemHash = rs.getString(4);
+                    } else {
+                        status = GradingStatus.GRADING;
+                        grade = 0;
+                        statusStr = "Grading";
+                    }
+                }
                 insertSubmission.setString(6, status.name());
                 insertSubmission.setString(7, statusStr);
+                insertSubmission.setDouble(8, grade);
+                insertSubmission.setString(9, gradedProblemHash);
                 try (ResultSet rs = insertSubmission.executeQuery()) {
                     if (rs.next()) {
                         sid = rs.getInt(1);
                         submittedOn = NetUtil.localToUTC(rs.getTimestamp(2).toLocalDateTime());
                         connection.commit();
-                        ServerCallbacks.getInstance().scheduleForGrading(sid);
+                        if (status == GradingStatus.GRADING) {
+                            ServerCallbacks.getInstance().scheduleForGrading(sid, cid, user.uid, NetUtil.localToUTC(rs.getTimestamp(3).toLocalDateTime()));
+                            statusStr = ServerCallbacks.getInstance().getGradingStatusString();
+                        }
                     }
                 }
             }
@@ -39,7 +39,7 @@ public class SubmissionFetchMsg<T extends ArisModule> extends ProblemMessage<T>
     @Nullable
     @Override
     public ErrorType processProblemMessage(@NotNull Connection connection, @NotNull User user, @NotNull ServerPermissions permissions) throws Exception {
-        try (PreparedStatement statement = connection.prepareStatement("SELECT p.module_name, s.data FROM submission s, problem p WHERE s.id = ? AND s.class_id=? AND s.assignment_id=? AND s.user_id=? AND s.problem_id=? AND s.problem_id = p.id;")) {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT p.module_name, b.data FROM submission s, problem p, blob b WHERE s.id = ? AND s.class_id=? AND s.assignment_id=? AND s.user_id=? AND s.problem_id=? AND s.problem_id = p.id AND b.hash = s.blob_hash;")) {
             statement.setInt(1, sid);
             statement.setInt(2, cid);
             statement.setInt(3, aid);
@@ -59,7 +59,7 @@ public class SubmissionFetchMsg<T extends ArisModule> extends ProblemMessage<T>
                 if (module == null)
                     return ErrorType.MISSING_MODULE;
                 ProblemConverter<T> converter = module.getProblemConverter();
-                try (InputStream in = rs.getBinaryStream(2)) {
+                try (InputStream in = BlobCodec.decode(rs.getBinaryStream(2))) {
                     setProblem(converter.loadProblem(in, true));
                 }
             }
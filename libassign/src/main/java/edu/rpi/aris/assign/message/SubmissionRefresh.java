@@ -48,7 +48,7 @@ public class SubmissionRefresh extends Message {
                         } catch (IllegalArgumentException e) {
                             status = GradingStatus.NONE;
                         }
-                        String statusStr = rs.getString(7);
+                        String statusStr = status == GradingStatus.GRADING ? ServerCallbacks.getInstance().getGradingStatusString() : rs.getString(7);
                         int pid = rs.getInt(8);
                         double grade = rs.getDouble(9);
                         MsgUtil.SubmissionInfo sub = new MsgUtil.SubmissionInfo(user.uid, id, pid, cid, aid, grade, status, statusStr, submitted);
@@ -0,0 +1,137 @@
+package edu.rpi.aris.assign;
+
+import edu.rpi.aris.assign.message.MsgUtil;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.*;
+
+public class SubmissionArchiveTest {
+
+    private static final ZonedDateTime TIME = ZonedDateTime.ofInstant(Instant.ofEpochMilli(1500000000000L), ZoneOffset.UTC);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static InputStream stored(String data) {
+        return new ByteArrayInputStream(BlobCodec.encode(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String read(SubmissionArchive archive, SubmissionArchive.Entry entry) throws IOException {
+        try (InputStream in = archive.getData(entry)) {
+            return new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    private File write() throws IOException {
+        File file = folder.newFile("test." + SubmissionArchive.FILE_EXTENSION);
+        try (SubmissionArchiveWriter writer = new SubmissionArchiveWriter(file, 3, 7, "Homework 1")) {
+            writer.addProblem(10, "Problem A", "Aris", "hash-a", stored("problem a"));
+            writer.addProblem(11, "Problem B", "Aris", "hash-b", stored("problem b"));
+            writer.addSubmission(new MsgUtil.SubmissionInfo(1, 100, 10, 3, 7, 1, GradingStatus.CORRECT, "Correct!", TIME), "Aris", "hash-s1", stored("submission 1"));
+            // blobs stored before compression was added are copied as is
+            writer.addSubmission(new MsgUtil.SubmissionInfo(2, 101, 11, 3, 7, 0.5, GradingStatus.PARTIAL, "Partial Credit", TIME), "Aris", "hash-s2", new ByteArrayInputStream("submission 2".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(2, writer.getSubmissionCount());
+        }
+        return file;
+    }
+
+    private static void corrupt(File file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        SubmissionArchive archive = SubmissionArchive.open(write());
+        assertEquals(3, archive.getClassId());
+        assertEquals(7, archive.getAssignmentId());
+        assertEquals("Homework 1", archive.getAssignmentName());
+        assertEquals(2, archive.getProblems().size());
+        SubmissionArchive.Entry problem = archive.getProblems().get(1);
+        assertFalse(problem.isSubmission());
+        assertEquals(11, problem.getProblemId());
+        assertEquals("Problem B", problem.getProblemName());
+        assertEquals("hash-b", problem.getBlobHash());
+        assertEquals("problem b", read(archive, problem));
+        assertEquals(2, archive.getSubmissions().size());
+        SubmissionArchive.Entry submission = archive.getSubmissions().get(0);
+        assertTrue(submission.isSubmission());
+        assertEquals("Aris", submission.getModuleName());
+        MsgUtil.SubmissionInfo info = submission.getSubmissionInfo();
+        assertEquals(1, info.uid);
+        assertEquals(100, info.sid);
+        assertEquals(10, info.pid);
+        assertEquals(GradingStatus.CORRECT, info.status);
+        assertEquals("Correct!", info.statusStr);
+        assertEquals(1, info.grade, 0);
+        assertEquals(TIME.toInstant(), info.submissionTime.toInstant());
+        assertEquals("submission 1", read(archive, submission));
+        assertEquals("submission 2", read(archive, archive.getSubmissions().get(1)));
+        archive.close();
+    }
+
+    @Test
+    public void detectsCorruptEntry() throws IOException {
+        File file = write();
+        // the first entry starts right after the header
+        corrupt(file, SubmissionArchive.HEADER_SIZE);
+        SubmissionArchive archive = SubmissionArchive.open(file);
+        try {
+            read(archive, archive.getProblems().get(0));
+            fail();
+        } catch (IOException ignored) {
+        }
+        assertEquals("problem b", read(archive, archive.getProblems().get(1)));
+        archive.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void detectsCorruptIndex() throws IOException {
+        File file = write();
+        corrupt(file, file.length() - SubmissionArchive.TRAILER_SIZE - 1);
+        SubmissionArchive.open(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void detectsTruncatedTrailer() throws IOException {
+        File file = write();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        SubmissionArchive.open(file);
+    }
+
+    @Test
+    public void abortDeletesArchive() throws IOException {
+        File file = folder.newFile("aborted." + SubmissionArchive.FILE_EXTENSION);
+        SubmissionArchiveWriter writer = new SubmissionArchiveWriter(file, 3, 7, "Homework 1");
+        writer.addProblem(10, "Problem A", "Aris", "hash-a", stored("problem a"));
+        writer.abort();
+        assertFalse(file.exists());
+        try {
+            writer.addProblem(11, "Problem B", "Aris", "hash-b", stored("problem b"));
+            fail();
+        } catch (IOException ignored) {
+        }
+        writer.close();
+        assertFalse(file.exists());
+    }
+
+}
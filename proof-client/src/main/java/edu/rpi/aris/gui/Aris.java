@@ -4,6 +4,7 @@ import edu.rpi.aris.LibAris;
 import edu.rpi.aris.assign.*;
 import edu.rpi.aris.proof.ArisProofProblem;
 import edu.rpi.aris.proof.Proof;
+import edu.rpi.aris.proof.ProofJournal;
 import edu.rpi.aris.proof.SaveInfoListener;
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -15,6 +16,7 @@ import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -36,10 +38,35 @@ public class Aris extends Application implements ArisClientModule<LibAris>, Save
 
     public static MainWindow showProofWindow(Stage stage, Proof p) throws IOException {
         MainWindow window = p == null ? new MainWindow(stage, EditMode.UNRESTRICTED_EDIT) : new MainWindow(stage, p, EditMode.UNRESTRICTED_EDIT);
+        window.startJournal();
         window.show();
         return window;
     }
 
+    /**
+     * Reopens the proofs that had unsaved changes when the client last crashed
+     *
+     * @return true if any proofs were recovered
+     */
+    private static boolean showRecoveredWindows(Stage stage) throws IOException {
+        List<ProofJournal> recovered = ProofJournal.recover(MainWindow.getJournalDir(), LibAris.getInstance().getProperties().get("username"));
+        for (ProofJournal journal : recovered) {
+            MainWindow window = new MainWindow(stage == null ? new Stage() : stage, journal.getProof(), EditMode.UNRESTRICTED_EDIT);
+            window.resumeJournal(journal);
+            window.show();
+            stage = null;
+        }
+        if (recovered.size() > 0) {
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Proofs recovered");
+            alert.setHeaderText("Proofs recovered");
+            alert.setContentText(LibAris.NAME + " did not close properly and " + recovered.size() + " proof" + (recovered.size() == 1 ? " has" : "s have") + " been recovered.\n" +
+                    "Save the recovered proofs to keep the changes.");
+            alert.show();
+        }
+        return recovered.size() > 0;
+    }
+
     public static Aris getInstance() {
         if (instance == null)
             instance = new Aris();
@@ -85,8 +112,9 @@ public class Aris extends Application implements ArisClientModule<LibAris>, Save
         JavaFXDialogArisExceptionHandler exceptionHandler = new JavaFXDialogArisExceptionHandler();
         libAssign.setArisExceptionHandler(exceptionHandler);
         Thread.setDefaultUncaughtExceptionHandler(libAssign);
-        /*mainWindow = */
-        showProofWindow(stage, null);
+        if (!showRecoveredWindows(stage))
+            /*mainWindow = */
+            showProofWindow(stage, null);
     }
 
     @NotNull
@@ -280,6 +280,7 @@ public class CopyManager {
         Line line = proof.addLine(realLineNum, pasteLine.isAssumption, baseIndent + pasteLine.lvl);
         line.setExpressionString(pasteLine.expr);
         line.getConstants().addAll(Arrays.asList(pasteLine.constStr.split(",")));
+        proof.constantsChanged(line);
         if (!pasteLine.isAssumption)
             line.setSelectedRule(pasteLine.rule);
         for (String pStr : pasteLine.prems) {
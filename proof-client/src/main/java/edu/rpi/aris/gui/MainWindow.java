@@ -38,6 +38,8 @@ import javafx.stage.Stage;
 import javafx.stage.Window;
 import org.apache.commons.lang3.Range;
 import org.apache.commons.lang3.tuple.Triple;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -45,12 +47,14 @@ import javax.xml.transform.TransformerException;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 public class MainWindow implements StatusChangeListener, SaveInfoListener, ModuleUI<LibAris> {
 
     public static final HashMap<Proof.Status, Image> STATUS_ICONS = new HashMap<>();
     private static FileChooser.ExtensionFilter extensionFilter = new FileChooser.ExtensionFilter("Bram Proof File (." + SaveManager.FILE_EXTENSION + ")", "*." + SaveManager.FILE_EXTENSION);
+    private static final Logger logger = LogManager.getLogger(MainWindow.class);
     private static FileChooser.ExtensionFilter allFiles = new FileChooser.ExtensionFilter("All Files", "*");
 
     static {
@@ -111,6 +115,7 @@ public class MainWindow implements StatusChangeListener, SaveInfoListener, Modul
     private MenuItem saveAsProof;
     private ModuleUIOptions moduleOptions;
     private RuleRestrictionUI ruleRestrictionUI;
+    private ProofJournal journal;
 
     public MainWindow(Stage primaryStage, EditMode editMode) throws IOException {
         this(primaryStage, editMode, null);
@@ -134,11 +139,16 @@ public class MainWindow implements StatusChangeListener, SaveInfoListener, Modul
         this.editMode = editMode;
         this.headerNode = headerNode;
         primaryStage.setTitle(LibAris.NAME);
-        primaryStage.setOnHidden(windowEvent -> new Thread(() -> {
-            if (moduleUIListener != null)
-                moduleUIListener.guiClosed();
-            System.gc();
-        }).start());
+        primaryStage.setOnHidden(windowEvent -> {
+            // the window was closed on purpose so there is nothing to recover
+            if (journal != null)
+                journal.delete();
+            new Thread(() -> {
+                if (moduleUIListener != null)
+                    moduleUIListener.guiClosed();
+                System.gc();
+            }).start();
+        });
         primaryStage.setOnCloseRequest(event -> {
             if ((moduleOptions == null || moduleOptions.warnBeforeUnsavedClose()) && proof.isModified()) {
                 Alert alert = new Alert(Alert.AlertType.WARNING);
@@ -183,6 +193,13 @@ public class MainWindow implements StatusChangeListener, SaveInfoListener, Modul
         });
     }
 
+    /**
+     * @return the directory holding the autosave journals of open proofs
+     */
+    public static File getJournalDir() {
+        return new File(GuiConfig.CLIENT_CONFIG_DIR, "journal");
+    }
+
     private static File showSaveDialog(Window parent, String defaultFileName) throws IOException {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setInitialDirectory(GuiConfig.getConfigManager().getSaveDirectory());
@@ -387,7 +404,7 @@ public class MainWindow implements StatusChangeListener, SaveInfoListener, Modul
 
         verifyLine.setOnAction(actionEvent -> verifyLine());
 
-        verifyProof.setOnAction(actionEvent -> this.proof.verifyProof());
+        verifyProof.setOnAction(actionEvent -> this.proof.verifyProof(ForkJoinPool.commonPool()));
 
         proofRestrictions.setOnAction(actionEvent -> ruleRestrictionUI.show(this.proof));
 
@@ -493,11 +510,19 @@ public class MainWindow implements StatusChangeListener, SaveInfoListener, Modul
                 if (f != null)
                     saveFile = f;
             }
+            ValidationScheduler.getInstance().flush();
             error = !saveManager.saveProof(proof, saveFile);
         } catch (TransformerException | IOException e) {
             e.printStackTrace();
             error = true;
         }
+        if (!error && journal != null) {
+            try {
+                journal.compact(saveFile);
+            } catch (IOException e) {
+                logger.error("Failed to compact the autosave journal", e);
+            }
+        }
         if (error) {
             Alert alert = new Alert(Alert.AlertType.ERROR);
             alert.setTitle("Error saving file");
@@ -538,7 +563,7 @@ public class MainWindow implements StatusChangeListener, SaveInfoListener, Modul
             }
             line.verifyClaim();
         } else if (lineNum < -1)
-            this.proof.verifyProof();
+            this.proof.verifyProof(ForkJoinPool.commonPool());
     }
 
     private void startSubProof() {
@@ -1048,6 +1073,25 @@ public class MainWindow implements StatusChangeListener, SaveInfoListener, Modul
         alert.showAndWait();
     }
 
+    /**
+     * Starts recording edits to the proof in an autosave journal so they can be recovered if the client crashes
+     */
+    public void startJournal() {
+        try {
+            journal = ProofJournal.create(getJournalDir(), proof, saveFile);
+        } catch (IOException e) {
+            logger.error("Failed to start the autosave journal", e);
+        }
+    }
+
+    /**
+     * Continues recording to a journal recovered after a crash
+     */
+    public void resumeJournal(@NotNull ProofJournal journal) {
+        this.journal = journal;
+        saveFile = journal.getSaveFile();
+    }
+
     public void setUIOptions(ModuleUIOptions options) {
         this.moduleOptions = options;
         saveProof.disableProperty().set(!options.allowDefaultSave() && !options.allowSaveAs());
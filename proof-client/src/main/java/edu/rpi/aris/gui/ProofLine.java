@@ -223,12 +223,15 @@ public class ProofLine implements LineChangeListener, LineInterface {
         String text = varText.getText();
         String[] split = text.split(",");
         TreeSet<String> constants = proofLine.getConstants();
+        TreeSet<String> oldConstants = new TreeSet<>(constants);
         constants.clear();
         for (String s : split) {
             s = s.trim();
             if (constantPattern.matcher(s).matches())
                 constants.add(s);
         }
+        if (!oldConstants.equals(constants))
+            window.getProof().constantsChanged(proofLine);
         varText.setText(StringUtils.join(constants, ','));
     }
 
@@ -303,6 +306,7 @@ public class ProofLine implements LineChangeListener, LineInterface {
                     proofLine.getConstants().remove(constant);
                 else
                     proofLine.getConstants().add(constant);
+                window.getProof().constantsChanged(proofLine);
                 String oldText = varText.getText();
                 varText.setText(StringUtils.join(proofLine.getConstants(), ","));
                 ConstantEvent event = new ConstantEvent(getLineNum(), oldText, varText.getText());
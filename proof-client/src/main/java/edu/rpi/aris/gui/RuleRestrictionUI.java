@@ -154,7 +154,7 @@ public class RuleRestrictionUI {
         proof.getAllowedRules().clear();
         proof.getAllowedRules().addAll(allowedList.getItems());
         proof.resetProofStatus();
-        proof.modify();
+        proof.allowedRulesChanged();
         proof.verifyProof();
         rulesManager.setAvailableRules(proof.getAllowedRules());
         stage.hide();
@@ -3,16 +3,17 @@ package edu.rpi.aris.server;
 import edu.rpi.aris.LibAris;
 import edu.rpi.aris.assign.AutoGrader;
 import edu.rpi.aris.assign.Problem;
+import edu.rpi.aris.ast.Expression;
+import edu.rpi.aris.ast.ParseCache;
 import edu.rpi.aris.proof.ArisProofProblem;
 import edu.rpi.aris.proof.Goal;
-import edu.rpi.aris.proof.Line;
 import edu.rpi.aris.proof.Proof;
+import edu.rpi.aris.proof.ProofOutline;
 import edu.rpi.aris.rules.RuleList;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashSet;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class ArisGrader implements AutoGrader<LibAris> {
 
@@ -27,65 +28,79 @@ public class ArisGrader implements AutoGrader<LibAris> {
         return goals;
     }
 
-    private ArrayList<Line> getPremises(Proof p) {
-        ArrayList<Line> lines = new ArrayList<>();
-        for (int i = 0; i < p.getNumPremises(); ++i) {
-            Line l = p.getLine(i);
-            if (l.getExpressionString().trim().length() > 0)
-                lines.add(l);
-        }
-        lines.sort(Comparator.comparing(Line::getExpressionString));
-        return lines;
-    }
-
-    private <T> boolean hasEqualObjects(ArrayList<T> l1, ArrayList<T> l2) {
+    /**
+     * Returns true if both lists hold the same expressions the same number of times. The expressions are interned so
+     * this is a hash lookup per expression rather than a native equality check per pair
+     */
+    private boolean hasEqualExpressions(ArrayList<Expression> l1, ArrayList<Expression> l2) {
         if (l1.size() != l2.size())
             return false;
-        for (T obj : l1) {
-            int i = 0;
-            while (i < l2.size()) {
-                if (obj.equals(l2.get(i)))
-                    break;
-                i++;
-            }
-            if (i == l2.size())
+        HashMap<Expression, Integer> counts = new HashMap<>();
+        for (Expression e : l2) {
+            if (e == null)
+                return false;
+            counts.merge(e, 1, Integer::sum);
+        }
+        for (Expression e : l1) {
+            if (e == null)
+                return false;
+            Integer count = counts.get(e);
+            if (count == null)
                 return false;
-            l2.remove(i);
+            if (count == 1)
+                counts.remove(e);
+            else
+                counts.put(e, count - 1);
         }
         return true;
     }
 
-    private boolean checkPremises(Proof problem, Proof solution) {
-        return hasEqualObjects(getPremises(problem), getPremises(solution));
+    private ArrayList<Expression> getExpressions(List<String> strings) {
+        ArrayList<Expression> expressions = new ArrayList<>();
+        for (String str : strings)
+            if (str.trim().length() > 0)
+                expressions.add(ParseCache.parse(str));
+        return expressions;
     }
 
-    private boolean checkGoals(Proof problem, Proof solution) {
-        return hasEqualObjects(getGoals(problem), getGoals(solution));
+    private boolean checkRuleConstraints(ProofOutline problem, ProofOutline solution) {
+        Set<RuleList> allowedRules = problem.getAllowedRules();
+        return allowedRules.size() == 0 || allowedRules.containsAll(solution.getUsedRules());
     }
 
-    private boolean checkRuleConstraints(Proof problem, Proof solution) {
-        HashSet<RuleList> allowedRules = problem.getAllowedRules();
-        if (allowedRules.size() == 0)
-            return true;
-        for (int i = 0; i < solution.getNumLines(); ++i) {
-            Line l = solution.getLine(i);
-            if (!l.isAssumption() && l.getSelectedRule() != null && !allowedRules.contains(l.getSelectedRule()))
-                return false;
-        }
-        return true;
+    /**
+     * Compares the outlines of the two proofs so neither proof has to be built just to match a submission to its
+     * problem
+     */
+    @Override
+    public boolean isSolutionForProblem(@NotNull Problem<LibAris> problem, @NotNull Problem<LibAris> solution) {
+        ProofOutline prb = ((ArisProofProblem) problem).getOutline();
+        ProofOutline sol = ((ArisProofProblem) solution).getOutline();
+        if (prb == null || sol == null)
+            return false;
+        return hasEqualExpressions(getExpressions(prb.getGoals()), getExpressions(sol.getGoals()))
+                && hasEqualExpressions(getExpressions(prb.getPremises()), getExpressions(sol.getPremises()))
+                && checkRuleConstraints(prb, sol);
     }
 
     @Override
-    public boolean isSolutionForProblem(@NotNull Problem<LibAris> problem, @NotNull Problem<LibAris> solution) {
-        Proof prb = ((ArisProofProblem) problem).getProof();
-        Proof sol = ((ArisProofProblem) solution).getProof();
-        return checkGoals(prb, sol) && checkPremises(prb, sol) && checkRuleConstraints(prb, sol);
+    public String getFingerprint(@NotNull Problem<LibAris> solution) {
+        ProofOutline outline = ((ArisProofProblem) solution).getOutline();
+        return outline == null ? null : outline.getFingerprint();
     }
 
     @Override
     public double gradeSolution(@NotNull Problem<LibAris> solution) {
-        Proof proof = ((ArisProofProblem) solution).getProof();
-        proof.verifyProof();
+        return grade(((ArisProofProblem) solution).getProof(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Verifies the proof and returns the fraction of its non empty goals that were proven
+     *
+     * @param pool the pool to verify lines on or null to verify them on the calling thread
+     */
+    double grade(@NotNull Proof proof, ForkJoinPool pool) {
+        proof.verifyProof(pool);
         ArrayList<Goal> goals = getGoals(proof);
         double correct = 0;
         for (Goal g : goals)
@@ -0,0 +1,219 @@
+package edu.rpi.aris.server;
+
+import edu.rpi.aris.proof.ArisProofProblem;
+import edu.rpi.aris.proof.Proof;
+import edu.rpi.aris.proof.SaveInfoListener;
+import edu.rpi.aris.proof.SaveManager;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Verifies saved proofs without the GUI so problem sets and answer keys can be checked in bulk. Accepts .bram and .prf
+ * files, directories which are searched recursively, and zip archives of proofs. Each proof is loaded with
+ * {@link SaveManager} and graded the same way as {@link ArisGrader#gradeSolution}, then every remaining line is checked
+ * so the report has a status for each line. Proofs are verified one per thread across all cores and written to the
+ * report in the order they were given
+ * <p>
+ * Usage: BatchVerifier [-t threads] [-o report.json|report.csv] &lt;file|directory|zip&gt;...
+ */
+public class BatchVerifier {
+
+    private static final Logger log = LogManager.getLogger(BatchVerifier.class);
+    private static final String USAGE = "Usage: BatchVerifier [-t threads] [-o report.json|report.csv] <file|directory|zip>...";
+
+    private final ArisGrader grader = new ArisGrader();
+    private final ThreadPoolExecutor executor;
+    private final ArrayDeque<Future<VerificationResult>> pending = new ArrayDeque<>();
+    private final VerificationReport report;
+
+    BatchVerifier(int threads, VerificationReport report) {
+        this.report = report;
+        AtomicInteger count = new AtomicInteger();
+        // a full queue makes the reading thread verify a proof itself so large zip files are not read ahead into memory
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 4), r -> {
+            Thread t = new Thread(r, "Batch verifier " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String output = null;
+        ArrayList<File> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "-t":
+                    if (++i == args.length)
+                        usage();
+                    try {
+                        threads = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        usage();
+                    }
+                    if (threads <= 0)
+                        usage();
+                    break;
+                case "-o":
+                    if (++i == args.length)
+                        usage();
+                    output = args[i];
+                    break;
+                default:
+                    inputs.add(new File(args[i]));
+            }
+        }
+        if (inputs.isEmpty())
+            usage();
+        Writer writer = new BufferedWriter(output == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8) : new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8));
+        boolean csv = output != null && output.toLowerCase(Locale.ROOT).endsWith(".csv");
+        try (VerificationReport report = csv ? VerificationReport.csv(writer) : VerificationReport.json(writer)) {
+            BatchVerifier verifier = new BatchVerifier(threads, report);
+            long start = System.nanoTime();
+            for (File input : inputs)
+                verifier.add(input);
+            verifier.finish();
+            long total = System.nanoTime() - start;
+            report.finish(total, threads);
+            log.info("Verified " + report.getProofs() + " proofs (" + report.getErrors() + " failed to load) in " + VerificationReport.millis(total) + " ms on " + threads + " threads");
+        }
+    }
+
+    private static void usage() {
+        System.err.println(USAGE);
+        System.exit(1);
+    }
+
+    private static boolean isProofFile(String name) {
+        name = name.toLowerCase(Locale.ROOT);
+        return name.endsWith("." + SaveManager.FILE_EXTENSION) || name.endsWith("." + SaveManager.FITCH_FILE_EXT);
+    }
+
+    /**
+     * Queues every proof in the given file, directory or zip archive
+     */
+    void add(File input) throws IOException, InterruptedException {
+        if (input.isDirectory()) {
+            ArrayList<Path> files;
+            try (Stream<Path> walk = Files.walk(input.toPath())) {
+                files = walk.filter(p -> Files.isRegularFile(p) && isProofFile(p.getFileName().toString())).sorted().collect(Collectors.toCollection(ArrayList::new));
+            }
+            for (Path p : files)
+                submit(p.toString(), () -> new BufferedInputStream(Files.newInputStream(p)));
+        } else if (input.getName().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            try (ZipFile zip = new ZipFile(input)) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || !isProofFile(entry.getName()))
+                        continue;
+                    byte[] data;
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        data = IOUtils.toByteArray(in);
+                    }
+                    submit(input.getPath() + "!/" + entry.getName(), () -> new ByteArrayInputStream(data));
+                }
+            }
+        } else
+            submit(input.getPath(), () -> new BufferedInputStream(new FileInputStream(input)));
+    }
+
+    private void submit(String source, ProofSource in) throws IOException, InterruptedException {
+        pending.add(executor.submit(() -> verify(source, in)));
+        drain(false);
+    }
+
+    /**
+     * Writes the finished results at the head of the queue so results are reported in order without holding on to
+     * all of them
+     *
+     * @param wait true to wait for every queued proof
+     */
+    private void drain(boolean wait) throws IOException, InterruptedException {
+        while (!pending.isEmpty() && (wait || pending.peek().isDone())) {
+            try {
+                report.write(pending.poll().get());
+            } catch (ExecutionException e) {
+                // verify records every failure in its result
+                throw new IOException("Batch verification failed", e.getCause());
+            }
+        }
+    }
+
+    void finish() throws IOException, InterruptedException {
+        drain(true);
+        executor.shutdown();
+    }
+
+    private VerificationResult verify(String source, ProofSource in) {
+        VerificationResult result = new VerificationResult(source);
+        SaveManager saveManager = new SaveManager(new SaveInfoListener() {
+            @Override
+            public boolean notArisFile(String filename, String programName, String programVersion) {
+                result.notArisFile = true;
+                return true;
+            }
+
+            @Override
+            public void integrityCheckFailed(String filename) {
+                result.integrityFailed = true;
+            }
+        });
+        long start = System.nanoTime();
+        Proof proof = null;
+        try {
+            try (InputStream stream = in.open()) {
+                ArisProofProblem problem = saveManager.loadProblem(stream, true);
+                proof = problem.getProof();
+            }
+            long loaded = System.nanoTime();
+            result.loadNanos = loaded - start;
+            if (proof == null) {
+                result.error = "Invalid file format";
+                return result;
+            }
+            result.grade = grader.grade(proof, null);
+            proof.verifyAllLines(null);
+            result.verifyNanos = System.nanoTime() - loaded;
+            result.addProof(proof);
+        } catch (Throwable e) {
+            // including errors such as a stack overflow on a very deep proof, which only fail this proof
+            log.debug("Failed to verify " + source, e);
+            result.error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        } finally {
+            if (proof != null) {
+                try {
+                    proof.close();
+                } catch (Throwable e) {
+                    log.debug("Failed to close " + source, e);
+                    if (result.error == null)
+                        result.error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                }
+            }
+        }
+        return result;
+    }
+
+    private interface ProofSource {
+
+        InputStream open() throws IOException;
+
+    }
+
+}
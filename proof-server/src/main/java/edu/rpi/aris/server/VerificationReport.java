@@ -0,0 +1,218 @@
+package edu.rpi.aris.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes {@link VerificationResult}s as they are produced so a report over thousands of proofs never has to be held in
+ * memory. The JSON report holds one object per proof with its lines and goals, the CSV report holds one row per line
+ * and goal with the proof's timings repeated on each row
+ */
+abstract class VerificationReport implements Closeable {
+
+    final Writer out;
+    private int proofs;
+    private int errors;
+
+    private VerificationReport(Writer out) {
+        this.out = out;
+    }
+
+    static VerificationReport json(Writer out) throws IOException {
+        return new Json(out);
+    }
+
+    static VerificationReport csv(Writer out) throws IOException {
+        return new Csv(out);
+    }
+
+    static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    void write(VerificationResult result) throws IOException {
+        ++proofs;
+        if (result.error != null)
+            ++errors;
+        writeResult(result);
+    }
+
+    abstract void writeResult(VerificationResult result) throws IOException;
+
+    /**
+     * Finishes the report
+     *
+     * @param totalNanos the time taken to verify every proof
+     * @param threads    the number of threads the proofs were verified on
+     */
+    abstract void finish(long totalNanos, int threads) throws IOException;
+
+    int getProofs() {
+        return proofs;
+    }
+
+    int getErrors() {
+        return errors;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private static class Json extends VerificationReport {
+
+        private boolean first = true;
+
+        Json(Writer out) throws IOException {
+            super(out);
+            out.write("{\"proofs\":[");
+        }
+
+        private static void string(StringBuilder sb, String str) {
+            if (str == null) {
+                sb.append("null");
+                return;
+            }
+            sb.append('"');
+            for (int i = 0; i < str.length(); ++i) {
+                char c = str.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        sb.append("\\r");
+                        break;
+                    case '\t':
+                        sb.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20)
+                            sb.append(String.format("\\u%04x", (int) c));
+                        else
+                            sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+
+        private static void items(StringBuilder sb, Iterable<VerificationResult.Item> items, boolean lines) {
+            sb.append('[');
+            boolean first = true;
+            for (VerificationResult.Item item : items) {
+                if (!first)
+                    sb.append(',');
+                first = false;
+                sb.append("{\"number\":").append(item.number);
+                if (lines) {
+                    sb.append(",\"assumption\":").append(item.isAssumption);
+                    sb.append(",\"level\":").append(item.level);
+                }
+                sb.append(",\"expression\":");
+                string(sb, item.expression);
+                if (lines) {
+                    sb.append(",\"rule\":");
+                    string(sb, item.rule);
+                }
+                sb.append(",\"status\":");
+                string(sb, item.status.name());
+                sb.append(",\"message\":");
+                string(sb, item.message);
+                sb.append('}');
+            }
+            sb.append(']');
+        }
+
+        @Override
+        void writeResult(VerificationResult result) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            if (!first)
+                sb.append(',');
+            first = false;
+            sb.append("\n{\"file\":");
+            string(sb, result.source);
+            sb.append(",\"error\":");
+            string(sb, result.error);
+            sb.append(",\"integrityFailed\":").append(result.integrityFailed);
+            sb.append(",\"notArisFile\":").append(result.notArisFile);
+            sb.append(",\"loadMs\":").append(millis(result.loadNanos));
+            sb.append(",\"verifyMs\":").append(millis(result.verifyNanos));
+            sb.append(",\"grade\":").append(result.grade);
+            sb.append(",\"goals\":");
+            items(sb, result.goals, false);
+            sb.append(",\"lines\":");
+            items(sb, result.lines, true);
+            sb.append('}');
+            out.write(sb.toString());
+        }
+
+        @Override
+        void finish(long totalNanos, int threads) throws IOException {
+            out.write("\n],\"summary\":{\"proofs\":" + getProofs() + ",\"errors\":" + getErrors() + ",\"threads\":" + threads + ",\"totalMs\":" + millis(totalNanos) + "}}\n");
+        }
+
+    }
+
+    private static class Csv extends VerificationReport {
+
+        Csv(Writer out) throws IOException {
+            super(out);
+            out.write("file,kind,number,assumption,level,expression,rule,status,message,grade,load_ms,verify_ms,error\n");
+        }
+
+        private static String field(String str) {
+            if (str == null)
+                return "";
+            if (str.indexOf(',') < 0 && str.indexOf('"') < 0 && str.indexOf('\n') < 0 && str.indexOf('\r') < 0)
+                return str;
+            return '"' + str.replace("\"", "\"\"") + '"';
+        }
+
+        private void row(VerificationResult result, String kind, VerificationResult.Item item) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            sb.append(field(result.source)).append(',').append(kind).append(',');
+            if (item != null) {
+                sb.append(item.number).append(',');
+                sb.append(kind.equals("line") ? String.valueOf(item.isAssumption) : "").append(',');
+                sb.append(kind.equals("line") ? String.valueOf(item.level) : "").append(',');
+                sb.append(field(item.expression)).append(',');
+                sb.append(field(item.rule)).append(',');
+                sb.append(item.status.name()).append(',');
+                sb.append(field(item.message)).append(',');
+            } else
+                sb.append(",,,,,,,");
+            sb.append(result.grade).append(',');
+            sb.append(millis(result.loadNanos)).append(',');
+            sb.append(millis(result.verifyNanos)).append(',');
+            sb.append(field(result.error)).append('\n');
+            out.write(sb.toString());
+        }
+
+        @Override
+        void writeResult(VerificationResult result) throws IOException {
+            if (result.error != null) {
+                row(result, "proof", null);
+                return;
+            }
+            for (VerificationResult.Item item : result.lines)
+                row(result, "line", item);
+            for (VerificationResult.Item item : result.goals)
+                row(result, "goal", item);
+        }
+
+        @Override
+        void finish(long totalNanos, int threads) {
+        }
+
+    }
+
+}
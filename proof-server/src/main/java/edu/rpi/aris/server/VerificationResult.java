@@ -0,0 +1,63 @@
+package edu.rpi.aris.server;
+
+import edu.rpi.aris.proof.Goal;
+import edu.rpi.aris.proof.Line;
+import edu.rpi.aris.proof.Proof;
+
+import java.util.ArrayList;
+
+/**
+ * The outcome of verifying a single proof with the {@link BatchVerifier}. Only the strings needed for the report are
+ * kept so the proof itself can be closed as soon as it has been verified
+ */
+class VerificationResult {
+
+    final String source;
+    final ArrayList<Item> lines = new ArrayList<>();
+    final ArrayList<Item> goals = new ArrayList<>();
+    String error;
+    boolean integrityFailed;
+    boolean notArisFile;
+    long loadNanos;
+    long verifyNanos;
+    double grade;
+
+    VerificationResult(String source) {
+        this.source = source;
+    }
+
+    void addProof(Proof proof) {
+        for (int i = 0; i < proof.getNumLines(); ++i) {
+            Line l = proof.getLine(i);
+            lines.add(new Item(i + 1, l.isAssumption(), l.getSubProofLevel(), l.getExpressionString(),
+                    l.getSelectedRule() == null ? null : l.getSelectedRule().name(), l.getStatus(), l.getStatusString()));
+        }
+        for (int i = 0; i < proof.getNumGoals(); ++i) {
+            Goal g = proof.getGoal(i);
+            goals.add(new Item(i + 1, false, 0, g.getGoalString(), null, g.getStatus(), g.getStatusString()));
+        }
+    }
+
+    static class Item {
+
+        final int number;
+        final boolean isAssumption;
+        final int level;
+        final String expression;
+        final String rule;
+        final Proof.Status status;
+        final String message;
+
+        Item(int number, boolean isAssumption, int level, String expression, String rule, Proof.Status status, String message) {
+            this.number = number;
+            this.isAssumption = isAssumption;
+            this.level = level;
+            this.expression = expression;
+            this.rule = rule;
+            this.status = status;
+            this.message = message;
+        }
+
+    }
+
+}
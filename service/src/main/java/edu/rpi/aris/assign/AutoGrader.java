@@ -2,6 +2,7 @@ package edu.rpi.aris.assign;
 
 import edu.rpi.aris.assign.spi.ArisModule;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This interface is used to perform auto grading for this {@link ArisModule}. It is assumed that the returned
@@ -14,7 +15,8 @@ public interface AutoGrader<T extends ArisModule> {
 
     /**
      * Returns true if the given solution is based on the given problem. Note: this function should not check the
-     * solution for correctness and should only check to ensure the solution is not the solution for a different problem
+     * solution for correctness and should only check to ensure the solution is not the solution for a different problem.
+     * The server caches parsed problems and shares them between grading threads, so the problem must not be modified
      *
      * @param problem  the problem the solution is expected to be based upon
      * @param solution the solution that should be a solution to the given problem
@@ -37,4 +39,19 @@ public interface AutoGrader<T extends ArisModule> {
      */
     double gradeSolution(@NotNull Problem<T> solution) throws Exception;
 
+    /**
+     * Returns a fingerprint of everything in the solution that affects its grade. Two solutions for the same problem
+     * with the same fingerprint must receive the same grade from {@link AutoGrader#gradeSolution(Problem)}, so the
+     * server can reuse a grade instead of grading an identical solution again. The default implementation returns null
+     * which disables grade reuse for the module
+     *
+     * @param solution the solution to fingerprint
+     * @return the fingerprint or null if the solution's grade should not be reused
+     * @throws Exception for any error that may occur while reading the solution
+     */
+    @Nullable
+    default String getFingerprint(@NotNull Problem<T> solution) throws Exception {
+        return null;
+    }
+
 }
@@ -2,5 +2,13 @@ package edu.rpi.aris.assign;
 
 import edu.rpi.aris.assign.spi.ArisModule;
 
-public interface Problem <T extends ArisModule> {
+public interface Problem <T extends ArisModule> extends AutoCloseable {
+
+    /**
+     * Releases any native or pooled resources held by the problem. The problem must not be used afterwards
+     */
+    @Override
+    default void close() {
+    }
+
 }
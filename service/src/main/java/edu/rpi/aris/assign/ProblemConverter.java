@@ -2,15 +2,69 @@ package edu.rpi.aris.assign;
 
 import edu.rpi.aris.assign.spi.ArisModule;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.InputStream;
 import java.io.OutputStream;
 
 public interface ProblemConverter<T extends ArisModule> {
 
+    /**
+     * The format written by {@link #convertProblem(Problem, OutputStream, boolean)}. Every converter must support it
+     */
+    int FORMAT_DEFAULT = 0;
+
     void convertProblem(@NotNull Problem<T> problem, @NotNull OutputStream out, boolean isProblemSolution) throws Exception;
 
+    /**
+     * Writes the problem in the given format. {@link #loadProblem(InputStream, boolean)} must be able to read every
+     * supported format without being told which one was used
+     *
+     * @param format one of the formats returned by {@link #getSupportedFormats()}
+     * @throws IllegalArgumentException if the format is not supported by this converter
+     */
+    default void convertProblem(@NotNull Problem<T> problem, @NotNull OutputStream out, boolean isProblemSolution, int format) throws Exception {
+        if (format != FORMAT_DEFAULT)
+            throw new IllegalArgumentException("Unsupported problem format: " + format);
+        convertProblem(problem, out, isProblemSolution);
+    }
+
     @NotNull
     Problem<T> loadProblem(@NotNull InputStream in, boolean isProblemSolution) throws Exception;
 
+    /**
+     * @return the formats this converter can read and write ordered from least to most preferred. Formats are only
+     * ever added so a peer running an older version still understands the ones it knows about
+     */
+    @NotNull
+    default int[] getSupportedFormats() {
+        return new int[]{FORMAT_DEFAULT};
+    }
+
+    /**
+     * @return the most preferred format supported by this converter
+     */
+    default int getPreferredFormat() {
+        int[] formats = getSupportedFormats();
+        return formats[formats.length - 1];
+    }
+
+    /**
+     * Picks the format to send a problem in
+     *
+     * @param ours   the formats supported locally, ordered from least to most preferred
+     * @param theirs the formats the peer accepts or null if the peer did not say, in which case it only accepts
+     *               {@link #FORMAT_DEFAULT}
+     * @return the most preferred of our formats that the peer accepts
+     */
+    static int negotiateFormat(@NotNull int[] ours, @Nullable int[] theirs) {
+        if (theirs == null)
+            return FORMAT_DEFAULT;
+        for (int i = ours.length - 1; i >= 0; --i)
+            for (int f : theirs)
+                if (f == ours[i])
+                    return f;
+        return FORMAT_DEFAULT;
+    }
+
 }